@@ -1,403 +0,0 @@
-import javax.swing.*;
-import java.awt.*;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.awt.event.KeyAdapter;
-import java.awt.event.KeyEvent;
-
-public class Tetris extends JPanel implements ActionListener {
-    private static final int BOARD_WIDTH = 10;
-    private static final int BOARD_HEIGHT = 20;
-    private static final int CELL_SIZE = 30;
-    private static final int DELAY = 400;
-
-    private Timer timer;
-    private boolean isFallingFinished = false;
-    private boolean isStarted = false;
-    private boolean isPaused = false;
-    private int score = 0;
-    private int curX = 0;
-    private int curY = 0;
-    private JLabel statusBar;
-    private Tetromino curPiece;
-    private Tetrominoes[] board;
-
-    public Tetris(JFrame parent) {
-        setFocusable(true);
-        curPiece = new Tetromino();
-        timer = new Timer(DELAY, this);
-        timer.start();
-
-        statusBar = new JLabel(" 0");
-        parent.add(statusBar, BorderLayout.SOUTH);
-        board = new Tetrominoes[BOARD_WIDTH * BOARD_HEIGHT];
-        
-        addKeyListener(new TAdapter());
-        clearBoard();
-    }
-
-    @Override
-    public void actionPerformed(ActionEvent e) {
-        if (isFallingFinished) {
-            isFallingFinished = false;
-            newPiece();
-        } else {
-            oneLineDown();
-        }
-    }
-
-    private int squareWidth() {
-        return (int) getSize().getWidth() / BOARD_WIDTH;
-    }
-
-    private int squareHeight() {
-        return (int) getSize().getHeight() / BOARD_HEIGHT;
-    }
-
-    private Tetrominoes shapeAt(int x, int y) {
-        return board[(y * BOARD_WIDTH) + x];
-    }
-
-    public void start() {
-        if (isPaused) {
-            return;
-        }
-
-        isStarted = true;
-        isFallingFinished = false;
-        score = 0;
-        clearBoard();
-        newPiece();
-        timer.start();
-    }
-
-    private void pause() {
-        if (!isStarted) {
-            return;
-        }
-
-        isPaused = !isPaused;
-        if (isPaused) {
-            timer.stop();
-            statusBar.setText("paused");
-        } else {
-            timer.start();
-            statusBar.setText(String.valueOf(score));
-        }
-        repaint();
-    }
-
-    @Override
-    public void paint(Graphics g) {
-        super.paint(g);
-
-        Dimension size = getSize();
-        int boardTop = (int) size.getHeight() - BOARD_HEIGHT * squareHeight();
-
-        for (int i = 0; i < BOARD_HEIGHT; ++i) {
-            for (int j = 0; j < BOARD_WIDTH; ++j) {
-                Tetrominoes shape = shapeAt(j, BOARD_HEIGHT - i - 1);
-                if (shape != Tetrominoes.NoShape) {
-                    drawSquare(g, j * squareWidth(),
-                            boardTop + i * squareHeight(), shape);
-                }
-            }
-        }
-
-        if (curPiece.getShape() != Tetrominoes.NoShape) {
-            for (int i = 0; i < 4; ++i) {
-                int x = curX + curPiece.x(i);
-                int y = curY - curPiece.y(i);
-                drawSquare(g, x * squareWidth(),
-                        boardTop + (BOARD_HEIGHT - y - 1) * squareHeight(),
-                        curPiece.getShape());
-            }
-        }
-    }
-
-    private void dropDown() {
-        int newY = curY;
-        while (newY > 0) {
-            if (!tryMove(curPiece, curX, newY - 1)) {
-                break;
-            }
-            --newY;
-        }
-        pieceDropped();
-    }
-
-    private void oneLineDown() {
-        if (!tryMove(curPiece, curX, curY - 1)) {
-            pieceDropped();
-        }
-    }
-
-    private void clearBoard() {
-        for (int i = 0; i < BOARD_HEIGHT * BOARD_WIDTH; ++i) {
-            board[i] = Tetrominoes.NoShape;
-        }
-    }
-
-    private void pieceDropped() {
-        for (int i = 0; i < 4; ++i) {
-            int x = curX + curPiece.x(i);
-            int y = curY - curPiece.y(i);
-            board[(y * BOARD_WIDTH) + x] = curPiece.getShape();
-        }
-
-        removeFullLines();
-
-        if (!isFallingFinished) {
-            newPiece();
-        }
-    }
-
-    private void newPiece() {
-        curPiece.setRandomShape();
-        curX = BOARD_WIDTH / 2 + 1;
-        curY = BOARD_HEIGHT - 1 + curPiece.minY();
-
-        if (!tryMove(curPiece, curX, curY)) {
-            curPiece.setShape(Tetrominoes.NoShape);
-            timer.stop();
-            isStarted = false;
-            statusBar.setText("game over");
-        }
-    }
-
-    private boolean tryMove(Tetromino newPiece, int newX, int newY) {
-        for (int i = 0; i < 4; ++i) {
-            int x = newX + newPiece.x(i);
-            int y = newY - newPiece.y(i);
-            if (x < 0 || x >= BOARD_WIDTH || y < 0 || y >= BOARD_HEIGHT) {
-                return false;
-            }
-            if (shapeAt(x, y) != Tetrominoes.NoShape) {
-                return false;
-            }
-        }
-
-        curPiece = newPiece;
-        curX = newX;
-        curY = newY;
-        repaint();
-        return true;
-    }
-
-    private void removeFullLines() {
-        int numFullLines = 0;
-
-        for (int i = BOARD_HEIGHT - 1; i >= 0; --i) {
-            boolean lineIsFull = true;
-
-            for (int j = 0; j < BOARD_WIDTH; ++j) {
-                if (shapeAt(j, i) == Tetrominoes.NoShape) {
-                    lineIsFull = false;
-                    break;
-                }
-            }
-
-            if (lineIsFull) {
-                ++numFullLines;
-                for (int k = i; k < BOARD_HEIGHT - 1; ++k) {
-                    for (int j = 0; j < BOARD_WIDTH; ++j) {
-                        board[(k * BOARD_WIDTH) + j] = shapeAt(j, k + 1);
-                    }
-                }
-            }
-        }
-
-        if (numFullLines > 0) {
-            score += numFullLines;
-            statusBar.setText(String.valueOf(score));
-            isFallingFinished = true;
-            curPiece.setShape(Tetrominoes.NoShape);
-            repaint();
-        }
-    }
-
-    private void drawSquare(Graphics g, int x, int y, Tetrominoes shape) {
-        Color colors[] = { new Color(0, 0, 0), new Color(204, 102, 102),
-                new Color(102, 204, 102), new Color(102, 102, 204),
-                new Color(204, 204, 102), new Color(204, 102, 204),
-                new Color(102, 204, 204), new Color(218, 170, 0)
-        };
-
-        Color color = colors[shape.ordinal()];
-
-        g.setColor(color);
-        g.fillRect(x + 1, y + 1, squareWidth() - 2, squareHeight() - 2);
-
-        g.setColor(color.brighter());
-        g.drawLine(x, y + squareHeight() - 1, x, y);
-        g.drawLine(x, y, x + squareWidth() - 1, y);
-
-        g.setColor(color.darker());
-        g.drawLine(x + 1, y + squareHeight() - 1,
-                x + squareWidth() - 1, y + squareHeight() - 1);
-        g.drawLine(x + squareWidth() - 1, y + squareHeight() - 1,
-                x + squareWidth() - 1, y + 1);
-    }
-
-    class TAdapter extends KeyAdapter {
-        @Override
-        public void keyPressed(KeyEvent e) {
-            if (!isStarted || curPiece.getShape() == Tetrominoes.NoShape) {
-                return;
-            }
-
-            int keycode = e.getKeyCode();
-
-            if (keycode == 'p' || keycode == 'P') {
-                pause();
-                return;
-            }
-
-            if (isPaused) {
-                return;
-            }
-
-            switch (keycode) {
-                case KeyEvent.VK_LEFT:
-                    tryMove(curPiece, curX - 1, curY);
-                    break;
-                case KeyEvent.VK_RIGHT:
-                    tryMove(curPiece, curX + 1, curY);
-                    break;
-                case KeyEvent.VK_DOWN:
-                    tryMove(curPiece.rotateRight(), curX, curY);
-                    break;
-                case KeyEvent.VK_UP:
-                    tryMove(curPiece.rotateLeft(), curX, curY);
-                    break;
-                case KeyEvent.VK_SPACE:
-                    dropDown();
-                    break;
-                case 'd':
-                case 'D':
-                    oneLineDown();
-                    break;
-            }
-        }
-    }
-
-    public static void main(String[] args) {
-        JFrame frame = new JFrame("Tetris");
-        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        frame.setSize(320, 640);
-        frame.setLocationRelativeTo(null);
-
-        Tetris game = new Tetris(frame);
-        frame.add(game);
-        frame.setVisible(true);
-
-        game.start();
-    }
-}
-
-enum Tetrominoes {
-    NoShape, ZShape, SShape, LineShape, TShape, SquareShape, LShape, MirroredLShape
-}
-
-class Tetromino {
-    private Tetrominoes pieceShape;
-    private int coords[][];
-    private int[][][] coordsTable;
-
-    public Tetromino() {
-        coords = new int[4][2];
-        setShape(Tetrominoes.NoShape);
-    }
-
-    public void setShape(Tetrominoes shape) {
-        coordsTable = new int[][][] {
-                { { 0, 0 }, { 0, 0 }, { 0, 0 }, { 0, 0 } },
-                { { 0, -1 }, { 0, 0 }, { -1, 0 }, { -1, 1 } },
-                { { 0, -1 }, { 0, 0 }, { 1, 0 }, { 1, 1 } },
-                { { 0, -1 }, { 0, 0 }, { 0, 1 }, { 0, 2 } },
-                { { -1, 0 }, { 0, 0 }, { 1, 0 }, { 0, 1 } },
-                { { 0, 0 }, { 1, 0 }, { 0, 1 }, { 1, 1 } },
-                { { -1, -1 }, { 0, -1 }, { 0, 0 }, { 0, 1 } },
-                { { 1, -1 }, { 0, -1 }, { 0, 0 }, { 0, 1 } }
-        };
-
-        for (int i = 0; i < 4; i++) {
-            for (int j = 0; j < 2; ++j) {
-                coords[i][j] = coordsTable[shape.ordinal()][i][j];
-            }
-        }
-        pieceShape = shape;
-    }
-
-    private void setX(int index, int x) {
-        coords[index][0] = x;
-    }
-
-    private void setY(int index, int y) {
-        coords[index][1] = y;
-    }
-
-    public int x(int index) {
-        return coords[index][0];
-    }
-
-    public int y(int index) {
-        return coords[index][1];
-    }
-
-    public Tetrominoes getShape() {
-        return pieceShape;
-    }
-
-    public void setRandomShape() {
-        int x = (int) (Math.random() * 7) + 1;
-        Tetrominoes[] values = Tetrominoes.values();
-        setShape(values[x]);
-    }
-
-    public int minX() {
-        int m = coords[0][0];
-        for (int i = 0; i < 4; i++) {
-            m = Math.min(m, coords[i][0]);
-        }
-        return m;
-    }
-
-    public int minY() {
-        int m = coords[0][1];
-        for (int i = 0; i < 4; i++) {
-            m = Math.min(m, coords[i][1]);
-        }
-        return m;
-    }
-
-    public Tetromino rotateLeft() {
-        if (pieceShape == Tetrominoes.SquareShape) {
-            return this;
-        }
-
-        Tetromino result = new Tetromino();
-        result.pieceShape = pieceShape;
-
-        for (int i = 0; i < 4; ++i) {
-            result.setX(i, y(i));
-            result.setY(i, -x(i));
-        }
-        return result;
-    }
-
-    public Tetromino rotateRight() {
-        if (pieceShape == Tetrominoes.SquareShape) {
-            return this;
-        }
-
-        Tetromino result = new Tetromino();
-        result.pieceShape = pieceShape;
-
-        for (int i = 0; i < 4; ++i) {
-            result.setX(i, -y(i));
-            result.setY(i, x(i));
-        }
-        return result;
-    }
-}
\ No newline at end of file
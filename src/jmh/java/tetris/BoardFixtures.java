@@ -0,0 +1,52 @@
+package tetris;
+
+import java.util.SplittableRandom;
+
+/** Reproducible board states shared by the benchmarks. */
+final class BoardFixtures {
+    /** How much of the playfield is filled before a benchmark runs. */
+    enum Fill {
+        EMPTY(0),
+        HALF_FULL(10),
+        NEARLY_TOPPED_OUT(16);
+
+        final int rows;
+
+        Fill(int rows) {
+            this.rows = rows;
+        }
+    }
+
+    private static final Tetrominoes[] SHAPES = Tetrominoes.values();
+
+    private BoardFixtures() {
+    }
+
+    /**
+     * Fills the bottom rows of {@code engine} with random shapes, leaving one
+     * hole per row so that no row is full.
+     */
+    static void fill(TetrisEngine engine, Fill fill, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        engine.clear();
+        for (int y = 0; y < fill.rows; y++) {
+            int hole = random.nextInt(engine.width());
+            for (int x = 0; x < engine.width(); x++) {
+                if (x != hole) {
+                    engine.setCell(x, y, SHAPES[random.nextInt(7) + 1]);
+                }
+            }
+        }
+    }
+
+    /** Completes the bottom {@code count} rows so that they can be cleared. */
+    static void completeRows(TetrisEngine engine, int count) {
+        for (int y = 0; y < count; y++) {
+            for (int x = 0; x < engine.width(); x++) {
+                if (!engine.isOccupied(x, y)) {
+                    engine.setCell(x, y, Tetrominoes.LineShape);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package tetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hot paths of {@link TetrisEngine}: moving, rotating, the ghost/hard-drop
+ * probe and line clearing, on boards of increasing fill.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EngineBenchmark {
+    @Param({ "EMPTY", "HALF_FULL", "NEARLY_TOPPED_OUT" })
+    public String fill;
+
+    private TetrisEngine engine;
+    private TetrisEngine clearTemplate;
+    private int spawnX;
+
+    @Setup
+    public void setUp() {
+        engine = new TetrisEngine();
+        BoardFixtures.fill(engine, BoardFixtures.Fill.valueOf(fill), 42);
+        engine.spawn(Tetromino.of(Tetrominoes.TShape));
+        spawnX = engine.curX();
+
+        clearTemplate = new TetrisEngine();
+        clearTemplate.copyFrom(engine);
+        BoardFixtures.completeRows(clearTemplate, 4);
+    }
+
+    @Benchmark
+    public boolean tryMove() {
+        int x = engine.curX() == spawnX ? spawnX + 1 : spawnX;
+        return engine.tryMove(engine.curPiece(), x, engine.curY());
+    }
+
+    @Benchmark
+    public boolean tryRotate() {
+        return engine.tryMove(engine.curPiece().rotateRight(), engine.curX(), engine.curY());
+    }
+
+    /** Landing row of the current piece, without the engine's dropY() cache. */
+    @Benchmark
+    public int ghostPosition() {
+        return engine.landingY(engine.curPiece(), engine.curX(), engine.curY());
+    }
+
+    /** Cost of restoring the board, to subtract from the line clear benchmarks. */
+    @Benchmark
+    public TetrisEngine copyBoard() {
+        engine.copyFrom(clearTemplate);
+        return engine;
+    }
+
+    @Benchmark
+    public int removeFullLines() {
+        engine.copyFrom(clearTemplate);
+        return engine.removeFullLines();
+    }
+
+    @Benchmark
+    public TetrisEngine removeLine() {
+        engine.copyFrom(clearTemplate);
+        engine.removeLine(0);
+        return engine;
+    }
+}
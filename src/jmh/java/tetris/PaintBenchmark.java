@@ -0,0 +1,66 @@
+package tetris;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One full {@link EnhancedTetris#paint} pass into an offscreen image.
+ *
+ * A frame should allocate nothing: run with {@code -prof gc} and check that
+ * {@code gc.alloc.rate.norm} stays at about 0 B/op. {@code PaintAllocationTest}
+ * checks the same on every {@code mvn test}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PaintBenchmark {
+    private static final int WIDTH = 500;
+    private static final int HEIGHT = 650;
+
+    @Param({ "EMPTY", "HALF_FULL", "NEARLY_TOPPED_OUT" })
+    public String fill;
+
+    private EnhancedTetris panel;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @Setup
+    public void setUp() {
+        panel = new EnhancedTetris(PieceGenerator.Kind.UNIFORM);
+        panel.createSidePanel();
+        panel.setSize(WIDTH, HEIGHT);
+        panel.game().start(42);
+        BoardFixtures.fill(panel.game().engine(), BoardFixtures.Fill.valueOf(fill), 42);
+
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+    }
+
+    @TearDown
+    public void tearDown() {
+        g.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        panel.paint(g);
+        return image;
+    }
+}
@@ -0,0 +1,72 @@
+package tetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One {@link HeuristicPolicy#choose} call, which scores every reachable
+ * placement of the current and the hold piece, and one {@link BeamSearchPolicy}
+ * search over the preview. The placements per call and the beam search
+ * metrics are printed at teardown.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PolicyBenchmark {
+    @Param({ "EMPTY", "HALF_FULL", "NEARLY_TOPPED_OUT" })
+    public String fill;
+
+    private TetrisGame game;
+    private HeuristicPolicy policy;
+    private BeamSearchPolicy beam;
+    private long calls;
+
+    @Setup
+    public void setUp() {
+        TetrisEngine engine = new TetrisEngine();
+        game = new TetrisGame(engine, PieceGenerator.Kind.BAG.create(42),
+                EnhancedTetris.PREVIEW_SIZE, false);
+        game.start(42);
+        BoardFixtures.fill(engine, BoardFixtures.Fill.valueOf(fill), 42);
+        policy = new HeuristicPolicy();
+        beam = new BeamSearchPolicy();
+    }
+
+    @Benchmark
+    public int choose() {
+        calls++;
+        return policy.choose(game);
+    }
+
+    @Benchmark
+    public int beamSearch() {
+        return beam.choose(game);
+    }
+
+    @TearDown
+    public void report() {
+        if (calls > 0) {
+            System.out.printf("%n%.1f placements per call%n", (double) policy.evaluations() / calls);
+        }
+        BeamSearchPolicy.Metrics metrics = beam.metrics();
+        if (metrics.searches() > 0) {
+            System.out.printf("%n%.0f nodes/s, %.1f%% transposition hits%n", metrics.nodesPerSecond(),
+                    metrics.hitRate() * 100);
+        }
+    }
+}
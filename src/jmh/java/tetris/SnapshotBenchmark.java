@@ -0,0 +1,69 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Taking, reading and restoring a {@link GameSnapshot}, after a number of
+ * pieces placed by a {@link HeuristicPolicy}; restoring should take the same
+ * time however many pieces have been dealt.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotBenchmark {
+    @Param({ "EMPTY", "HALF_FULL", "NEARLY_TOPPED_OUT" })
+    public String fill;
+
+    @Param({ "0", "1000", "10000" })
+    public int pieces;
+
+    private TetrisGame game;
+    private TetrisGame target;
+    private GameSnapshot snapshot;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        TetrisEngine engine = new TetrisEngine();
+        game = new TetrisGame(engine, PieceGenerator.Kind.BAG.create(42), EnhancedTetris.PREVIEW_SIZE, false);
+        TetrisSimulator.playGame(game, new HeuristicPolicy(), 42, pieces);
+        BoardFixtures.fill(engine, BoardFixtures.Fill.valueOf(fill), 42);
+        snapshot = GameSnapshot.of(game);
+        bytes = snapshot.toByteArray();
+        target = new TetrisGame(new TetrisEngine(), PieceGenerator.Kind.BAG.create(0), EnhancedTetris.PREVIEW_SIZE,
+                false);
+    }
+
+    @Benchmark
+    public byte[] save() {
+        return GameSnapshot.of(game).toByteArray();
+    }
+
+    @Benchmark
+    public GameSnapshot read() throws IOException {
+        return GameSnapshot.read(ByteBuffer.wrap(bytes));
+    }
+
+    @Benchmark
+    public TetrisGame restore() {
+        snapshot.restore(target);
+        return target;
+    }
+}
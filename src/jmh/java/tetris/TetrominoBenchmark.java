@@ -0,0 +1,45 @@
+package tetris;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TetrominoBenchmark {
+    @Param({ "TShape", "LineShape", "SquareShape" })
+    public String shape;
+
+    private Tetromino piece;
+
+    @Benchmark
+    public Tetromino rotateLeft() {
+        if (piece == null) {
+            piece = Tetromino.of(Tetrominoes.valueOf(shape));
+        }
+        piece = piece.rotateLeft();
+        return piece;
+    }
+
+    @Benchmark
+    public Tetromino rotateRight() {
+        if (piece == null) {
+            piece = Tetromino.of(Tetrominoes.valueOf(shape));
+        }
+        piece = piece.rotateRight();
+        return piece;
+    }
+}
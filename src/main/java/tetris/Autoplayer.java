@@ -0,0 +1,82 @@
+package tetris;
+
+import tetris.Controls.Action;
+
+/**
+ * Demo mode of {@link EnhancedTetris}: plays the current piece where a
+ * {@link MovePolicy} puts it, one move every {@link #MOVE_TICKS} steps so
+ * that it can be watched. Each move is reported to the same listener as the
+ * player's, so demo games are recorded as replays too.
+ */
+final class Autoplayer {
+    static final int MOVE_TICKS = 4;
+
+    private final MovePolicy policy;
+    private final InputController.MoveListener listener;
+    private int plan = -1;
+    private int ticks = 0;
+
+    Autoplayer(MovePolicy policy, InputController.MoveListener listener) {
+        this.policy = policy;
+        this.listener = listener;
+    }
+
+    /** Forgets the plan for the previous piece; called when a piece spawns. */
+    void reset() {
+        plan = -1;
+        ticks = 0;
+    }
+
+    /** Runs one step: plans the current piece if needed and makes the next move towards it. */
+    void update(TetrisGame game) {
+        if (!game.isPieceActive()) {
+            return;
+        }
+        if (plan < 0) {
+            plan = policy.choose(game);
+        }
+        if (++ticks < MOVE_TICKS) {
+            return;
+        }
+        ticks = 0;
+
+        TetrisEngine engine = game.engine();
+        Action move;
+        if (MovePolicy.hold(plan)) {
+            move = Action.HOLD;
+            // The piece swapped in is planned from scratch
+            plan = -1;
+        } else if (engine.curPiece().getRotation() != MovePolicy.rotation(plan)) {
+            move = Action.ROTATE_RIGHT;
+        } else if (engine.curX() < MovePolicy.x(plan)) {
+            move = Action.MOVE_RIGHT;
+        } else if (engine.curX() > MovePolicy.x(plan)) {
+            move = Action.MOVE_LEFT;
+        } else {
+            move = Action.HARD_DROP;
+        }
+        if (!apply(game, move)) {
+            // Blocked since the plan was made; drop where it is
+            move = Action.HARD_DROP;
+            apply(game, move);
+        }
+        listener.moved(move);
+    }
+
+    private static boolean apply(TetrisGame game, Action move) {
+        switch (move) {
+            case HOLD:
+                game.hold();
+                return true;
+            case ROTATE_RIGHT:
+                return game.rotateRight();
+            case MOVE_RIGHT:
+                return game.moveRight();
+            case MOVE_LEFT:
+                return game.moveLeft();
+            default:
+                game.dropDown();
+                return true;
+        }
+    }
+}
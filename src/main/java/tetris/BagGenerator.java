@@ -0,0 +1,73 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Deals shuffled bags of all 7 shapes. Its state is the random generator,
+ * the index of the next shape in the bag and the bag itself.
+ */
+final class BagGenerator implements PieceGenerator {
+    private static final Tetrominoes[] SHAPES = Tetrominoes.values();
+
+    private final byte[] bag = new byte[7];
+    private int index = bag.length;
+    private final SplitMix64 random = new SplitMix64(0);
+
+    @Override
+    public void reset(long seed) {
+        random.setState(seed);
+        index = bag.length;
+    }
+
+    @Override
+    public Tetrominoes next() {
+        if (index == bag.length) {
+            for (int i = 0; i < bag.length; i++) {
+                bag[i] = (byte) (i + 1);
+            }
+            for (int i = bag.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                byte tmp = bag[i];
+                bag[i] = bag[j];
+                bag[j] = tmp;
+            }
+            index = 0;
+        }
+        return SHAPES[bag[index++]];
+    }
+
+    @Override
+    public Kind kind() {
+        return Kind.BAG;
+    }
+
+    @Override
+    public void saveState(ByteBuffer out) {
+        out.putLong(random.state());
+        out.put((byte) index);
+        out.put(bag);
+    }
+
+    @Override
+    public void restoreState(ByteBuffer in) {
+        long state = in.getLong();
+        int savedIndex = in.get();
+        if (savedIndex < 0 || savedIndex > bag.length) {
+            throw new IllegalArgumentException("Bag index " + savedIndex);
+        }
+        // The bag only matters once a shape has been dealt from it, and then holds every shape once
+        if (savedIndex < bag.length) {
+            int seen = 0;
+            for (int i = 0; i < bag.length; i++) {
+                int shape = in.get(in.position() + i);
+                if (shape < 1 || shape > bag.length || (seen & 1 << shape) != 0) {
+                    throw new IllegalArgumentException("Not a bag of every shape");
+                }
+                seen |= 1 << shape;
+            }
+        }
+        in.get(bag);
+        random.setState(state);
+        index = savedIndex;
+    }
+}
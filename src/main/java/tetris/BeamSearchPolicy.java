@@ -0,0 +1,554 @@
+package tetris;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plans the current piece by looking ahead over the preview and hold pieces.
+ *
+ * Each layer of the beam places one more known piece: the next one in line
+ * or, through hold, the held piece (the one after next when nothing is held).
+ * Children are expanded in parallel on a fork-join pool into slots reserved
+ * for each parent, scored by a {@link HeuristicPolicy} board evaluation plus
+ * the line rewards along their path, and the best {@code beamWidth} distinct
+ * states are kept. States reached by different move orders are found through
+ * a Zobrist hash of the board cells, the held piece and the queue position,
+ * looked up in a {@link TranspositionTable}.
+ *
+ * The move returned is the first placement on the path to the best state of
+ * the deepest layer.
+ */
+class BeamSearchPolicy implements MovePolicy {
+    static final int DEFAULT_BEAM_WIDTH = 32;
+
+    /** Search counters, shared by every policy built with the same instance. */
+    static final class Metrics {
+        private final LongAdder searches = new LongAdder();
+        private final LongAdder nodes = new LongAdder();
+        private final LongAdder probes = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder searchNanos = new LongAdder();
+
+        long searches() {
+            return searches.sum();
+        }
+
+        /** States expanded so far. */
+        long nodes() {
+            return nodes.sum();
+        }
+
+        /** States expanded per second spent searching. */
+        double nodesPerSecond() {
+            long nanos = searchNanos.sum();
+            return nanos == 0 ? 0 : nodes.sum() * 1e9 / nanos;
+        }
+
+        /** Fraction of expanded states that were already in their layer. */
+        double hitRate() {
+            long total = probes.sum();
+            return total == 0 ? 0 : (double) hits.sum() / total;
+        }
+    }
+
+    /** One layer of states; rows are stored back to back, {@code height} per state. */
+    private static final class Layer {
+        final int[] rows;
+        final long[] board;
+        final int[] hold;
+        final int[] next;
+        final int[] root;
+        final double[] reward;
+        final double[] score;
+        int size;
+
+        Layer(int capacity, int height) {
+            rows = new int[capacity * height];
+            board = new long[capacity];
+            hold = new int[capacity];
+            next = new int[capacity];
+            root = new int[capacity];
+            reward = new double[capacity];
+            score = new double[capacity];
+        }
+    }
+
+    /** Per-thread scratch for expanding states. */
+    private final class Worker {
+        final HeuristicPolicy evaluator = new HeuristicPolicy(weights);
+        int[] heights = new int[0];
+    }
+
+    private static final Tetrominoes[] SHAPES = Tetrominoes.values();
+
+    private final double[] weights;
+    private final int beamWidth;
+    private final ForkJoinPool pool;
+    private final Metrics metrics;
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    private int width;
+    private int height;
+    private int fullRow;
+    private int maxChildren;
+    private long[] cellKeys;
+    private long[] holdKeys;
+    private long[] nextKeys;
+    private Layer beam;
+    private Layer nextBeam;
+    private Layer children;
+    private int[] childCount;
+    private boolean[] dead;
+    private int[] candidates;
+    private TranspositionTable table;
+
+    private Tetromino[] pieces = new Tetromino[0];
+    private int pieceCount;
+    private int rootX;
+    private int rootY;
+    private boolean rootCanHold;
+    private int depth;
+
+    BeamSearchPolicy() {
+        this(HeuristicPolicy.DEFAULT_WEIGHTS, DEFAULT_BEAM_WIDTH, ForkJoinPool.commonPool(), new Metrics());
+    }
+
+    BeamSearchPolicy(double[] weights, int beamWidth, ForkJoinPool pool, Metrics metrics) {
+        if (beamWidth < 1) {
+            throw new IllegalArgumentException("Beam width must be positive: " + beamWidth);
+        }
+        if (weights.length != HeuristicPolicy.FEATURES) {
+            throw new IllegalArgumentException("Expected " + HeuristicPolicy.FEATURES + " weights, got " + weights.length);
+        }
+        this.weights = weights.clone();
+        this.beamWidth = beamWidth;
+        this.pool = pool;
+        this.metrics = metrics;
+    }
+
+    Metrics metrics() {
+        return metrics;
+    }
+
+    @Override
+    public int choose(TetrisGame game) {
+        long start = System.nanoTime();
+        TetrisEngine engine = game.engine();
+        prepare(engine, game.previewSize() + 1);
+
+        Tetromino current = engine.curPiece();
+        pieces[0] = current;
+        pieceCount = 1 + game.previewSize();
+        for (int i = 1; i < pieceCount; i++) {
+            pieces[i] = game.preview(i - 1);
+        }
+        rootX = engine.curX();
+        rootY = engine.curY();
+        rootCanHold = game.canHold();
+
+        beam.size = 1;
+        for (int y = 0; y < height; y++) {
+            beam.rows[y] = engine.row(y);
+        }
+        beam.board[0] = boardHash(beam.rows, 0);
+        beam.hold[0] = code(game.heldPiece());
+        beam.next[0] = 0;
+        beam.root[0] = MovePolicy.placement(current.getRotation(), rootX, false);
+        beam.reward[0] = 0;
+        beam.score[0] = 0;
+
+        long nodes = 0;
+        for (depth = 0; depth < pieceCount && !allPlaced(); depth++) {
+            pool.invoke(new Expand(0, beam.size));
+            for (int n = 0; n < beam.size; n++) {
+                nodes += childCount[n];
+            }
+            if (!select()) {
+                break;
+            }
+            Layer swap = beam;
+            beam = nextBeam;
+            nextBeam = swap;
+        }
+
+        int best = 0;
+        for (int n = 1; n < beam.size; n++) {
+            if (beam.score[n] > beam.score[best]) {
+                best = n;
+            }
+        }
+        metrics.searches.increment();
+        metrics.nodes.add(nodes);
+        metrics.searchNanos.add(System.nanoTime() - start);
+        return beam.root[best];
+    }
+
+    private boolean allPlaced() {
+        for (int n = 0; n < beam.size; n++) {
+            if (beam.next[n] < pieceCount) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Sizes the layers and hash keys for {@code engine} and {@code pieces} known pieces. */
+    private void prepare(TetrisEngine engine, int known) {
+        if (pieces.length < known) {
+            pieces = new Tetromino[known];
+            nextKeys = null;
+        }
+        if (engine.width() != width || engine.height() != height || nextKeys == null) {
+            if (engine.width() > HeuristicPolicy.MAX_WIDTH) {
+                throw new IllegalArgumentException("Board too wide for the policy: " + engine.width());
+            }
+            width = engine.width();
+            height = engine.height();
+            fullRow = (1 << width) - 1;
+            // Four rotations in every column, for the piece in play and the one hold brings in
+            maxChildren = 2 * 4 * width;
+            SplittableRandom random = new SplittableRandom(0x5EEDL);
+            cellKeys = new long[width * height];
+            for (int i = 0; i < cellKeys.length; i++) {
+                cellKeys[i] = random.nextLong();
+            }
+            holdKeys = new long[SHAPES.length * 4];
+            for (int i = 0; i < holdKeys.length; i++) {
+                holdKeys[i] = random.nextLong();
+            }
+            nextKeys = new long[pieces.length + 2];
+            for (int i = 0; i < nextKeys.length; i++) {
+                nextKeys[i] = random.nextLong();
+            }
+            int capacity = beamWidth * maxChildren;
+            beam = new Layer(beamWidth, height);
+            nextBeam = new Layer(beamWidth, height);
+            children = new Layer(capacity, height);
+            childCount = new int[beamWidth];
+            dead = new boolean[capacity];
+            candidates = new int[capacity];
+            table = new TranspositionTable(capacity * 2);
+        }
+    }
+
+    /** Expands the states of the beam between two indices. */
+    private final class Expand extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int LEAF_SIZE = 2;
+
+        private final int from;
+        private final int to;
+
+        Expand(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                Worker worker = workers.get();
+                for (int n = from; n < to; n++) {
+                    childCount[n] = expand(worker, n);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Expand(from, mid), new Expand(mid, to));
+        }
+    }
+
+    /** Writes the children of beam state {@code n} into its slots; returns how many there are. */
+    private int expand(Worker worker, int n) {
+        int next = beam.next[n];
+        int base = n * maxChildren;
+        if (next >= pieceCount) {
+            // Nothing left to place; carried into the next layer as it is
+            copyState(n, base);
+            children.reward[base] = beam.reward[n];
+            children.score[base] = beam.score[n];
+            return 1;
+        }
+        if (worker.heights.length != width) {
+            worker.heights = new int[width];
+        }
+        columnHeights(beam.rows, n * height, worker.heights);
+
+        Tetromino piece = pieces[next];
+        int x = spawnX();
+        int y = spawnY(piece);
+        if (depth == 0) {
+            x = rootX;
+            y = rootY;
+        } else if (!fits(beam.rows, n * height, piece, x, y)) {
+            return 0;
+        }
+        int hold = beam.hold[n];
+        int count = expandPiece(worker, n, piece, x, y, hold, next + 1, false, 0);
+
+        if (depth > 0 || rootCanHold) {
+            Tetromino other = null;
+            int otherNext = next + 1;
+            if (hold == 0) {
+                if (next + 1 < pieceCount) {
+                    other = pieces[next + 1];
+                    otherNext = next + 2;
+                }
+            } else {
+                other = decode(hold);
+            }
+            if (other != null && fits(beam.rows, n * height, other, spawnX(), spawnY(other))) {
+                count = expandPiece(worker, n, other, spawnX(), spawnY(other), code(piece), otherNext, true, count);
+            }
+        }
+        return count;
+    }
+
+    /** Same placements as {@link HeuristicPolicy}: clockwise turns, then shifts either way. */
+    private int expandPiece(Worker worker, int n, Tetromino piece, int x, int y, int hold, int next,
+            boolean held, int count) {
+        int offset = n * height;
+        Tetromino rotated = piece;
+        for (int turn = 0; turn < 4; turn++) {
+            if (turn > 0) {
+                Tetromino turned = rotated.rotateRight();
+                if (turned == piece || !fits(beam.rows, offset, turned, x, y)) {
+                    break;
+                }
+                rotated = turned;
+            }
+            count = place(worker, n, rotated, x, y, hold, next, held, count);
+            for (int left = x - 1; fits(beam.rows, offset, rotated, left, y); left--) {
+                count = place(worker, n, rotated, left, y, hold, next, held, count);
+            }
+            for (int right = x + 1; fits(beam.rows, offset, rotated, right, y); right++) {
+                count = place(worker, n, rotated, right, y, hold, next, held, count);
+            }
+        }
+        return count;
+    }
+
+    private int place(Worker worker, int n, Tetromino piece, int x, int y, int hold, int next, boolean held,
+            int count) {
+        int child = n * maxChildren + count;
+        int offset = child * height;
+        int[] rows = children.rows;
+        copyState(n, child);
+        children.hold[child] = hold;
+        children.next[child] = next;
+        if (depth == 0) {
+            children.root[child] = MovePolicy.placement(piece.getRotation(), x, held);
+        }
+
+        int landing = landingY(beam.rows, n * height, worker.heights, piece, x, y);
+        int[] pieceRows = piece.rowMasks();
+        int left = x + piece.minX();
+        int top = landing - piece.minY();
+        long board = children.board[child];
+        int lines = 0;
+        for (int k = 0; k < pieceRows.length; k++) {
+            int row = offset + top - k;
+            rows[row] |= pieceRows[k] << left;
+            for (int bits = pieceRows[k] << left; bits != 0; bits &= bits - 1) {
+                board ^= cellKeys[(top - k) * width + Integer.numberOfTrailingZeros(bits)];
+            }
+            if (rows[row] == fullRow) {
+                lines++;
+            }
+        }
+        if (lines > 0) {
+            int dst = offset;
+            for (int src = offset; src < offset + height; src++) {
+                if (rows[src] != fullRow) {
+                    rows[dst++] = rows[src];
+                }
+            }
+            while (dst < offset + height) {
+                rows[dst++] = 0;
+            }
+            board = boardHash(rows, offset);
+        }
+        children.board[child] = board;
+        children.reward[child] = beam.reward[n] + weights[HeuristicPolicy.LINES] * lines;
+        children.score[child] = children.reward[child] + worker.evaluator.boardScore(rows, offset, height, width);
+        return count + 1;
+    }
+
+    /**
+     * Keeps the best {@code beamWidth} distinct children in {@code nextBeam};
+     * returns false when there are none.
+     */
+    private boolean select() {
+        table.nextGeneration();
+        long probes = 0;
+        long hits = 0;
+        int alive = 0;
+        for (int n = 0; n < beam.size; n++) {
+            int base = n * maxChildren;
+            for (int c = base; c < base + childCount[n]; c++) {
+                probes++;
+                long key = children.board[c] ^ holdKeys[children.hold[c]] ^ nextKeys[children.next[c]];
+                int seen = table.get(key);
+                dead[c] = false;
+                if (seen >= 0) {
+                    hits++;
+                    if (children.score[c] > children.score[seen]) {
+                        dead[seen] = true;
+                        table.put(key, c);
+                    } else {
+                        dead[c] = true;
+                    }
+                } else {
+                    table.put(key, c);
+                }
+            }
+        }
+        for (int n = 0; n < beam.size; n++) {
+            int base = n * maxChildren;
+            for (int c = base; c < base + childCount[n]; c++) {
+                if (!dead[c]) {
+                    candidates[alive++] = c;
+                }
+            }
+        }
+        metrics.probes.add(probes);
+        metrics.hits.add(hits);
+        if (alive == 0) {
+            return false;
+        }
+
+        int kept = Math.min(alive, beamWidth);
+        if (alive > beamWidth) {
+            // Min-heap of the best children so far, worst at the root
+            for (int i = kept / 2 - 1; i >= 0; i--) {
+                siftDown(i, kept);
+            }
+            for (int i = kept; i < alive; i++) {
+                if (children.score[candidates[i]] > children.score[candidates[0]]) {
+                    candidates[0] = candidates[i];
+                    siftDown(0, kept);
+                }
+            }
+        }
+        for (int i = 0; i < kept; i++) {
+            int c = candidates[i];
+            System.arraycopy(children.rows, c * height, nextBeam.rows, i * height, height);
+            nextBeam.board[i] = children.board[c];
+            nextBeam.hold[i] = children.hold[c];
+            nextBeam.next[i] = children.next[c];
+            nextBeam.root[i] = children.root[c];
+            nextBeam.reward[i] = children.reward[c];
+            nextBeam.score[i] = children.score[c];
+        }
+        nextBeam.size = kept;
+        return true;
+    }
+
+    private void siftDown(int i, int size) {
+        int c = candidates[i];
+        double score = children.score[c];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && children.score[candidates[child + 1]] < children.score[candidates[child]]) {
+                child++;
+            }
+            if (children.score[candidates[child]] >= score) {
+                break;
+            }
+            candidates[i] = candidates[child];
+            i = child;
+        }
+        candidates[i] = c;
+    }
+
+    /** Copies the board, hash and root move of beam state {@code n} into child slot {@code child}. */
+    private void copyState(int n, int child) {
+        System.arraycopy(beam.rows, n * height, children.rows, child * height, height);
+        children.board[child] = beam.board[n];
+        children.hold[child] = beam.hold[n];
+        children.next[child] = beam.next[n];
+        children.root[child] = beam.root[n];
+    }
+
+    private long boardHash(int[] rows, int offset) {
+        long hash = 0;
+        for (int y = 0; y < height; y++) {
+            for (int bits = rows[offset + y]; bits != 0; bits &= bits - 1) {
+                hash ^= cellKeys[y * width + Integer.numberOfTrailingZeros(bits)];
+            }
+        }
+        return hash;
+    }
+
+    private void columnHeights(int[] rows, int offset, int[] heights) {
+        int covered = 0;
+        for (int x = 0; x < width; x++) {
+            heights[x] = 0;
+        }
+        for (int y = height - 1; y >= 0 && covered != fullRow; y--) {
+            for (int fresh = rows[offset + y] & ~covered; fresh != 0; fresh &= fresh - 1) {
+                heights[Integer.numberOfTrailingZeros(fresh)] = y + 1;
+            }
+            covered |= rows[offset + y];
+        }
+    }
+
+    /** {@link TetrisEngine#fits} on a board stored at {@code rows[offset]}. */
+    private boolean fits(int[] rows, int offset, Tetromino piece, int x, int y) {
+        int left = x + piece.minX();
+        if (left < 0 || x + piece.maxX() >= width) {
+            return false;
+        }
+        int top = y - piece.minY();
+        if (y - piece.maxY() < 0 || top >= height) {
+            return false;
+        }
+        int[] pieceRows = piece.rowMasks();
+        for (int k = 0; k < pieceRows.length; k++) {
+            if ((rows[offset + top - k] & (pieceRows[k] << left)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** {@link TetrisEngine#landingY} on a board stored at {@code rows[offset]}. */
+    private int landingY(int[] rows, int offset, int[] heights, Tetromino piece, int x, int y) {
+        int[] bottoms = piece.columnBottoms();
+        int left = x + piece.minX();
+        int distance = Integer.MAX_VALUE;
+        for (int k = 0; k < bottoms.length; k++) {
+            int gap = y - bottoms[k] - heights[left + k];
+            if (gap < 0) {
+                while (y > 0 && fits(rows, offset, piece, x, y - 1)) {
+                    y--;
+                }
+                return y;
+            }
+            distance = Math.min(distance, gap);
+        }
+        return y - distance;
+    }
+
+    /** Where {@link TetrisEngine#spawn} puts a piece. */
+    private int spawnX() {
+        return width / 2 + 1;
+    }
+
+    private int spawnY(Tetromino piece) {
+        return height - 1 + piece.minY();
+    }
+
+    private static int code(Tetromino piece) {
+        return piece.getShape().ordinal() * 4 + piece.getRotation();
+    }
+
+    private static Tetromino decode(int code) {
+        return Tetromino.of(SHAPES[code >> 2], code & 3);
+    }
+}
@@ -0,0 +1,101 @@
+package tetris;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * Pre-rendered cell tiles of one size, one per shape.
+ *
+ * Tiles are compatible images of the device the board is painted on, which
+ * Java2D keeps in video memory once they are drawn, so drawing a cell is a
+ * single accelerated blit. They are not {@link VolatileImage}s because those
+ * are backed at the screen's scale, and a tile has to be an exact number of
+ * device pixels for the board to scale without seams. Tiles are re-rendered
+ * when the device changes.
+ */
+final class CellSprites {
+    private static final Color[] COLORS = {
+        new Color(0, 0, 0),
+        new Color(204, 102, 102),
+        new Color(102, 204, 102),
+        new Color(102, 102, 204),
+        new Color(204, 204, 102),
+        new Color(204, 102, 204),
+        new Color(102, 204, 204),
+        new Color(218, 170, 0)
+    };
+
+    private final int width;
+    private final int height;
+    private final BufferedImage[] tiles = new BufferedImage[COLORS.length];
+    private GraphicsConfiguration config;
+
+    CellSprites(int size) {
+        this(size, size);
+    }
+
+    CellSprites(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    void draw(Graphics g, int x, int y, Tetrominoes shape) {
+        GraphicsConfiguration gc = ((Graphics2D) g).getDeviceConfiguration();
+        if (gc != config) {
+            flush();
+            config = gc;
+        }
+
+        int index = shape.ordinal();
+        BufferedImage tile = tiles[index];
+        if (tile == null) {
+            tile = gc.createCompatibleImage(width, height, Transparency.OPAQUE);
+            tiles[index] = tile;
+            render(tile, shape);
+        }
+        g.drawImage(tile, x, y, null);
+    }
+
+    /** Releases the tiles; they are rebuilt on the next draw. */
+    void flush() {
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != null) {
+                tiles[i].flush();
+                tiles[i] = null;
+            }
+        }
+    }
+
+    private void render(BufferedImage tile, Tetrominoes shape) {
+        Graphics g = tile.createGraphics();
+        try {
+            Color color = COLORS[shape.ordinal()];
+
+            g.setColor(color);
+            g.fillRect(1, 1, width - 2, height - 2);
+
+            g.setColor(color.brighter());
+            g.drawLine(0, height - 1, 0, 0);
+            g.drawLine(0, 0, width - 1, 0);
+
+            g.setColor(color.darker());
+            g.drawLine(1, height - 1, width - 1, height - 1);
+            g.drawLine(width - 1, height - 1, width - 1, 1);
+        } finally {
+            g.dispose();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package tetris;
+
+import java.awt.event.KeyEvent;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Key bindings and auto-shift timing of {@link EnhancedTetris}.
+ *
+ * Timings are counted in {@link GameLoop} steps. {@code das} is how long a
+ * direction is held before it starts repeating, {@code arr} the interval
+ * between repeats (0 moves straight to the wall) and {@code softDrop} the
+ * interval between rows while soft drop is held.
+ *
+ * Both can be overridden from a properties file, e.g.
+ * <pre>
+ * das=10
+ * arr=2
+ * softDrop=2
+ * MOVE_LEFT=LEFT,A
+ * </pre>
+ * where keys are {@link KeyEvent} names without the {@code VK_} prefix. An
+ * action listed in the file loses its default keys.
+ */
+final class Controls {
+    static final String FILE_NAME = "tetris_controls.properties";
+
+    enum Action {
+        MOVE_LEFT, MOVE_RIGHT, SOFT_DROP, HARD_DROP, ROTATE_RIGHT, ROTATE_LEFT, HOLD, PAUSE, START, DEMO, OVERLAY
+    }
+
+    private final Map<Integer, Action> keys = new HashMap<>();
+    private int das = 10;
+    private int arr = 2;
+    private int softDrop = 2;
+
+    Controls() {
+        bind(KeyEvent.VK_LEFT, Action.MOVE_LEFT);
+        bind(KeyEvent.VK_A, Action.MOVE_LEFT);
+        bind(KeyEvent.VK_RIGHT, Action.MOVE_RIGHT);
+        bind(KeyEvent.VK_D, Action.MOVE_RIGHT);
+        bind(KeyEvent.VK_DOWN, Action.SOFT_DROP);
+        bind(KeyEvent.VK_S, Action.SOFT_DROP);
+        bind(KeyEvent.VK_SPACE, Action.HARD_DROP);
+        bind(KeyEvent.VK_UP, Action.ROTATE_RIGHT);
+        bind(KeyEvent.VK_W, Action.ROTATE_RIGHT);
+        bind(KeyEvent.VK_Z, Action.ROTATE_LEFT);
+        bind(KeyEvent.VK_SHIFT, Action.HOLD);
+        bind(KeyEvent.VK_C, Action.HOLD);
+        bind(KeyEvent.VK_P, Action.PAUSE);
+        bind(KeyEvent.VK_ESCAPE, Action.PAUSE);
+        bind(KeyEvent.VK_ENTER, Action.START);
+        bind(KeyEvent.VK_F2, Action.DEMO);
+        bind(KeyEvent.VK_F3, Action.OVERLAY);
+    }
+
+    /** Default controls overridden by {@code file} when it exists. */
+    static Controls load(File file) {
+        Controls controls = new Controls();
+        if (file.exists()) {
+            Properties properties = new Properties();
+            try (Reader reader = new FileReader(file)) {
+                properties.load(reader);
+                controls.apply(properties);
+            } catch (IOException | IllegalArgumentException e) {
+                e.printStackTrace();
+                return new Controls();
+            }
+        }
+        return controls;
+    }
+
+    /** The action bound to {@code keyCode}, or null. */
+    Action action(int keyCode) {
+        return keys.get(keyCode);
+    }
+
+    void bind(int keyCode, Action action) {
+        keys.put(keyCode, action);
+    }
+
+    void unbind(Action action) {
+        keys.values().removeIf(a -> a == action);
+    }
+
+    int das() {
+        return das;
+    }
+
+    int arr() {
+        return arr;
+    }
+
+    int softDrop() {
+        return softDrop;
+    }
+
+    void setTiming(int das, int arr, int softDrop) {
+        if (das < 0 || arr < 0 || softDrop < 1) {
+            throw new IllegalArgumentException("Invalid timing das=" + das + " arr=" + arr + " softDrop=" + softDrop);
+        }
+        this.das = das;
+        this.arr = arr;
+        this.softDrop = softDrop;
+    }
+
+    private void apply(Properties properties) {
+        setTiming(intValue(properties, "das", das), intValue(properties, "arr", arr),
+                intValue(properties, "softDrop", softDrop));
+        for (Action action : Action.values()) {
+            String value = properties.getProperty(action.name());
+            if (value == null) {
+                continue;
+            }
+            unbind(action);
+            for (String name : value.split(",")) {
+                int keyCode = keyCode(name.trim());
+                if (keyCode == KeyEvent.VK_UNDEFINED) {
+                    System.err.println("Unknown key " + name.trim() + " for " + action);
+                } else {
+                    bind(keyCode, action);
+                }
+            }
+        }
+    }
+
+    private static int intValue(Properties properties, String name, int defaultValue) {
+        String value = properties.getProperty(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    private static int keyCode(String name) {
+        try {
+            return KeyEvent.class.getField("VK_" + name.toUpperCase()).getInt(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            return KeyEvent.VK_UNDEFINED;
+        }
+    }
+}
@@ -0,0 +1,985 @@
+package tetris;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.net.InetSocketAddress;
+import javax.management.JMException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.Collections;
+import javax.sound.sampled.*;
+
+/**
+ * Swing front-end of {@link TetrisGame}.
+ *
+ * The board is a canvas rendered actively from a {@link GameLoop} thread
+ * through a page-flipped {@link BufferStrategy}. Key events are queued for
+ * the loop by an {@link InputController}, so only the loop changes the game;
+ * it holds {@code lock} while it does, as do the side panels reading it on
+ * the EDT.
+ *
+ * A {@link BufferStrategy} only shows whole frames, so the cells the engine
+ * reports as changed just mark the frame dirty and the whole canvas is drawn
+ * and shown. Unlike the region repaints of {@link Tetris}, every change costs
+ * a full frame, which is slower on software pipelines and remote desktops;
+ * in return frames never tear and the falling piece moves smoothly.
+ *
+ * Cells shrink to fit the board in the view, down to {@link #MIN_CELL_SIZE};
+ * a larger board is shown through a viewport that follows the current piece,
+ * and only the cells inside it are drawn.
+ *
+ * The canvas is laid out in units of its preferred size and scaled to fill
+ * the window, on top of the screen's own scale. The board is drawn in device
+ * pixels: the cell size is rounded to whole pixels, and the background and
+ * the cell tiles are rendered at that resolution whenever the size or the
+ * screen changes, so a frame is the same few blits at any size. The next
+ * and held pieces in the side panel are drawn the same way, at its scale.
+ */
+public class EnhancedTetris extends Canvas implements GameLoop.Stage {
+    private static final int CELL_SIZE = 30;
+    private static final int MIN_CELL_SIZE = 8;
+    /** Preferred size of the canvas, and the units of its layout. */
+    private static final int DESIGN_WIDTH = 500;
+    private static final int DESIGN_HEIGHT = 650;
+    /** Position and size of the board area of the canvas. */
+    private static final int VIEW_LEFT = 50;
+    private static final int VIEW_TOP = 50;
+    private static final int VIEW_WIDTH = 300;
+    private static final int VIEW_HEIGHT = 600;
+    /** Cells the viewport keeps between the current piece and its edges. */
+    private static final int VIEW_MARGIN = 2;
+    static final int PREVIEW_SIZE = 4;
+    /** Cell sizes of the next and held pieces and of the later previews, in units of the side panel. */
+    private static final int PREVIEW_CELL_SIZE = 20;
+    private static final int SMALL_PREVIEW_CELL_SIZE = 10;
+    /** Loop steps per line clear animation frame (50ms). */
+    private static final int ANIMATION_STEP_TICKS = 3;
+    /** Steps the demo mode shows a finished game before starting the next one (3s). */
+    private static final int DEMO_RESTART_TICKS = 180;
+    private static final Color BOARD_BACKGROUND = new Color(10, 10, 10);
+    private static final Color GRID = new Color(30, 30, 30);
+    private static final Color GHOST = new Color(100, 100, 100, 80);
+    private static final Color SHADE = new Color(0, 0, 0, 150);
+    private static final Font BANNER_FONT = new Font("Arial", Font.BOLD, 48);
+    private static final Font OVERLAY_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 11);
+    private static final Color OVERLAY_BACKGROUND = new Color(0, 0, 0, 170);
+    private static final Color OVERLAY_TEXT = new Color(120, 255, 120);
+    
+    private final Object lock = new Object();
+    private GameLoop loop;
+    private final InputController input;
+    private final PieceGenerator.Kind randomizer;
+    private Path replayDir;
+    private ReplayRecorder recorder;
+    private final InputController.MoveListener recordMove;
+    private Autoplayer autoplayer;
+    private int demoRestartTicks = 0;
+    private boolean dirty = true;
+    private boolean isPaused = false;
+    private int highScore = 0;
+    private final Leaderboard leaderboard;
+    private ScoreArchive archive;
+    private SpectatorServer spectators;
+    private final PerformanceMetrics metrics;
+    private boolean showOverlay = false;
+    private String[] shownOverlay;
+    
+    // Layout in device pixels, redone by layout() when the canvas size or the screen changes
+    private GraphicsConfiguration layoutConfig;
+    private int layoutWidth = -1;
+    private int layoutHeight = -1;
+    /** The transform of the canvas without its scale. */
+    private final AffineTransform deviceTransform = new AffineTransform();
+    /** Device pixels per layout unit. */
+    private double scale;
+    private int deviceWidth;
+    private int deviceHeight;
+    private int cellPixels;
+    private int boardX;
+    private int boardY;
+    private Font bannerFont;
+    private Font overlayFont;
+    private CellSprites boardSprites;
+    /** Background, board and grid. */
+    private BufferedImage staticLayer;
+    
+    private JLabel scoreLabel;
+    private JLabel levelLabel;
+    private JLabel highScoreLabel;
+    private JLabel linesLabel;
+    private JPanel nextPanel;
+    private JPanel holdPanel;
+    
+    private TetrisEngine engine;
+    private TetrisGame game;
+    private final int cellSize;
+    /** Cells shown of the board, and the board cell at the bottom left of the view. */
+    private final int viewColumns;
+    private final int viewRows;
+    private int viewX = 0;
+    private int viewY = 0;
+    // Preview tiles in device pixels of the side panel, redone by previewGraphics() when its scale changes
+    private double previewScale;
+    private CellSprites previewSprites;
+    private CellSprites smallPreviewSprites;
+    
+    public EnhancedTetris(PieceGenerator.Kind randomizer) {
+        this(randomizer, new Controls());
+    }
+    
+    public EnhancedTetris(PieceGenerator.Kind randomizer, Controls controls) {
+        this(randomizer, controls, TetrisEngine.DEFAULT_WIDTH, TetrisEngine.DEFAULT_HEIGHT);
+    }
+    
+    public EnhancedTetris(PieceGenerator.Kind randomizer, Controls controls, int width, int height) {
+        setFocusable(true);
+        setBackground(new Color(20, 20, 20));
+        setPreferredSize(new Dimension(DESIGN_WIDTH, DESIGN_HEIGHT));
+        
+        engine = new TetrisEngine(width, height);
+        cellSize = Math.max(MIN_CELL_SIZE, Math.min(CELL_SIZE, Math.min(VIEW_WIDTH / width, VIEW_HEIGHT / height)));
+        viewColumns = Math.min(width, VIEW_WIDTH / cellSize);
+        viewRows = Math.min(height, VIEW_HEIGHT / cellSize);
+        this.randomizer = randomizer;
+        game = new TetrisGame(engine, randomizer.create(0), PREVIEW_SIZE, true);
+        game.setListener(new GameListener());
+        engine.setListener((minX, minY, maxX, maxY) -> dirty = true);
+        input = new InputController(controls);
+        recordMove = move -> {
+            if (recorder != null) {
+                recorder.record(game.steps(), move);
+            }
+        };
+        input.setMoveListener(recordMove);
+        
+        addKeyListener(new TAdapter());
+        leaderboard = new Leaderboard(Paths.get(Leaderboard.FILE_NAME), Paths.get(Leaderboard.LEGACY_FILE_NAME),
+                10, Leaderboard.Durability.FSYNC);
+        leaderboard.loaded().thenRun(() -> {
+            synchronized (lock) {
+                highScore = Math.max(highScore, leaderboard.bestScore());
+                updateLabels();
+            }
+        });
+        try {
+            archive = ScoreArchive.open(Paths.get(ScoreArchive.DIR_NAME));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        metrics = new PerformanceMetrics(input, leaderboard);
+    }
+    
+    TetrisGame game() {
+        return game;
+    }
+    
+    GameLoop loop() {
+        return loop;
+    }
+    
+    InputController input() {
+        return input;
+    }
+    
+    Leaderboard leaderboard() {
+        return leaderboard;
+    }
+    
+    PerformanceMetrics metrics() {
+        return metrics;
+    }
+    
+    /** Archive of every finished game, or null if it could not be opened. */
+    ScoreArchive archive() {
+        return archive;
+    }
+    
+    /** Turns the demo mode, where a {@link HeuristicPolicy} plays, on or off; boards too wide for it stay off. */
+    public void setDemo(boolean demo) {
+        synchronized (lock) {
+            autoplayer = demo && engine.width() <= HeuristicPolicy.MAX_WIDTH
+                    ? new Autoplayer(new HeuristicPolicy(), recordMove) : null;
+            demoRestartTicks = 0;
+        }
+    }
+    
+    /** Streams every step of the game to the spectators of {@code server}. */
+    public void streamTo(SpectatorServer server) {
+        if (!SpectatorState.fits(engine.width(), engine.height())) {
+            throw new IllegalArgumentException("Board too large to stream");
+        }
+        synchronized (lock) {
+            spectators = server;
+        }
+    }
+    
+    /** Records every game from now on as a {@link Replay} in {@code dir}. */
+    public void recordReplays(Path dir) {
+        synchronized (lock) {
+            replayDir = dir;
+        }
+    }
+    
+    /** Closes the replay of the game in progress, leaving it unfinished, and waits until it is written. */
+    public void closeReplay() {
+        ReplayRecorder closing;
+        synchronized (lock) {
+            closing = recorder;
+            recorder = null;
+        }
+        if (closing != null) {
+            closing.close();
+            try {
+                closing.awaitClosed(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    /**
+     * Saves the game in progress to {@code file} as a {@link GameSnapshot}, or
+     * deletes the file when no game is in progress.
+     */
+    public void suspendGame(Path file) throws IOException {
+        GameSnapshot snapshot;
+        synchronized (lock) {
+            snapshot = game.isStarted() ? GameSnapshot.of(game) : null;
+        }
+        if (snapshot != null) {
+            snapshot.write(file);
+        } else {
+            Files.deleteIfExists(file);
+        }
+    }
+    
+    /** Continues the game saved by {@link #suspendGame}; its replay is not recorded. */
+    public void resumeGame(Path file) throws IOException {
+        GameSnapshot snapshot = GameSnapshot.read(file);
+        closeReplay();
+        synchronized (lock) {
+            snapshot.restore(game);
+            isPaused = false;
+            if (autoplayer != null) {
+                autoplayer.reset();
+            }
+            highScore = Math.max(highScore, game.score());
+            dirty = true;
+        }
+        updateLabels();
+        if (nextPanel != null) {
+            nextPanel.repaint();
+            holdPanel.repaint();
+        }
+    }
+    
+    public JPanel createSidePanel() {
+        JPanel sidePanel = new JPanel();
+        sidePanel.setLayout(new BoxLayout(sidePanel, BoxLayout.Y_AXIS));
+        sidePanel.setBackground(new Color(30, 30, 30));
+        sidePanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+        
+        Font labelFont = new Font("Arial", Font.BOLD, 16);
+        Font valueFont = new Font("Arial", Font.PLAIN, 24);
+        
+        JLabel scoreTitleLabel = new JLabel("SCORE");
+        scoreTitleLabel.setForeground(Color.WHITE);
+        scoreTitleLabel.setFont(labelFont);
+        scoreTitleLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        
+        scoreLabel = new JLabel("0");
+        scoreLabel.setForeground(Color.CYAN);
+        scoreLabel.setFont(valueFont);
+        scoreLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        
+        JLabel levelTitleLabel = new JLabel("LEVEL");
+        levelTitleLabel.setForeground(Color.WHITE);
+        levelTitleLabel.setFont(labelFont);
+        levelTitleLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        
+        levelLabel = new JLabel("1");
+        levelLabel.setForeground(Color.GREEN);
+        levelLabel.setFont(valueFont);
+        levelLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        
+        JLabel linesTitleLabel = new JLabel("LINES");
+        linesTitleLabel.setForeground(Color.WHITE);
+        linesTitleLabel.setFont(labelFont);
+        linesTitleLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        
+        linesLabel = new JLabel("0");
+        linesLabel.setForeground(Color.YELLOW);
+        linesLabel.setFont(valueFont);
+        linesLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        
+        JLabel highScoreTitleLabel = new JLabel("HIGH SCORE");
+        highScoreTitleLabel.setForeground(Color.WHITE);
+        highScoreTitleLabel.setFont(labelFont);
+        highScoreTitleLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        
+        highScoreLabel = new JLabel(String.valueOf(highScore));
+        highScoreLabel.setForeground(Color.MAGENTA);
+        highScoreLabel.setFont(valueFont);
+        highScoreLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        
+        nextPanel = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                Graphics2D device = previewGraphics(g);
+                try {
+                    synchronized (lock) {
+                        Tetromino nextPiece = game.nextPiece();
+                        if (nextPiece.getShape() != Tetrominoes.NoShape) {
+                            drawPreviewPiece(device, nextPiece, 50, 30, previewSprites);
+                        }
+                        for (int i = 1; i < game.previewSize(); i++) {
+                            drawPreviewPiece(device, game.preview(i), 45 * i - 20, 115, smallPreviewSprites);
+                        }
+                    }
+                } finally {
+                    device.dispose();
+                }
+            }
+        };
+        nextPanel.setBackground(new Color(40, 40, 40));
+        nextPanel.setPreferredSize(new Dimension(150, 150));
+        nextPanel.setBorder(BorderFactory.createTitledBorder(
+            BorderFactory.createLineBorder(Color.WHITE), "NEXT", 
+            0, 0, labelFont, Color.WHITE));
+        
+        holdPanel = new JPanel() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                Tetromino heldPiece;
+                synchronized (lock) {
+                    heldPiece = game.heldPiece();
+                }
+                if (heldPiece.getShape() != Tetrominoes.NoShape) {
+                    Graphics2D device = previewGraphics(g);
+                    try {
+                        drawPreviewPiece(device, heldPiece, 50, 30, previewSprites);
+                    } finally {
+                        device.dispose();
+                    }
+                }
+            }
+        };
+        holdPanel.setBackground(new Color(40, 40, 40));
+        holdPanel.setPreferredSize(new Dimension(150, 100));
+        holdPanel.setBorder(BorderFactory.createTitledBorder(
+            BorderFactory.createLineBorder(Color.WHITE), "HOLD", 
+            0, 0, labelFont, Color.WHITE));
+        
+        sidePanel.add(scoreTitleLabel);
+        sidePanel.add(scoreLabel);
+        sidePanel.add(Box.createVerticalStrut(20));
+        sidePanel.add(levelTitleLabel);
+        sidePanel.add(levelLabel);
+        sidePanel.add(Box.createVerticalStrut(20));
+        sidePanel.add(linesTitleLabel);
+        sidePanel.add(linesLabel);
+        sidePanel.add(Box.createVerticalStrut(20));
+        sidePanel.add(highScoreTitleLabel);
+        sidePanel.add(highScoreLabel);
+        sidePanel.add(Box.createVerticalStrut(30));
+        sidePanel.add(nextPanel);
+        sidePanel.add(Box.createVerticalStrut(20));
+        sidePanel.add(holdPanel);
+        
+        return sidePanel;
+    }
+    
+    /**
+     * A copy of a side panel's graphics that draws in device pixels, like the
+     * board, with the preview tiles rendered at the scale of its screen.
+     */
+    private Graphics2D previewGraphics(Graphics g) {
+        Graphics2D device = (Graphics2D) g.create();
+        AffineTransform transform = device.getTransform();
+        if (previewSprites == null || transform.getScaleX() != previewScale) {
+            previewScale = transform.getScaleX();
+            if (previewSprites != null) {
+                previewSprites.flush();
+                smallPreviewSprites.flush();
+            }
+            previewSprites = new CellSprites(Math.max(1, (int) (PREVIEW_CELL_SIZE * previewScale)));
+            smallPreviewSprites = new CellSprites(Math.max(1, (int) (SMALL_PREVIEW_CELL_SIZE * previewScale)));
+        }
+        device.setTransform(AffineTransform.getTranslateInstance(transform.getTranslateX(), transform.getTranslateY()));
+        return device;
+    }
+    
+    /** Draws {@code piece} at an offset in units of the side panel, on graphics from {@link #previewGraphics}. */
+    private void drawPreviewPiece(Graphics g, Tetromino piece, int offsetX, int offsetY, CellSprites sprites) {
+        int left = (int) Math.round(offsetX * previewScale);
+        int top = (int) Math.round(offsetY * previewScale);
+        for (int i = 0; i < 4; i++) {
+            int x = left + piece.x(i) * sprites.width();
+            int y = top + piece.y(i) * sprites.height();
+            sprites.draw(g, x, y, piece.getShape());
+        }
+    }
+    
+    @Override
+    public void update() {
+        synchronized (lock) {
+            advance();
+            if (spectators != null) {
+                spectators.publish(game);
+            }
+        }
+    }
+    
+    /** One step of input, demo and game rules. */
+    private void advance() {
+        long inputStart = System.nanoTime();
+        int pressed = input.update(game, game.isStarted() && !isPaused && autoplayer == null);
+        metrics.inputTime.record(System.nanoTime() - inputStart);
+        if ((pressed & InputController.bit(Controls.Action.DEMO)) != 0) {
+            setDemo(autoplayer == null);
+        }
+        if ((pressed & InputController.bit(Controls.Action.OVERLAY)) != 0) {
+            showOverlay = !showOverlay;
+            dirty = true;
+        }
+        if ((pressed & InputController.bit(Controls.Action.START)) != 0 && !game.isStarted()) {
+            start();
+        }
+        if ((pressed & InputController.bit(Controls.Action.PAUSE)) != 0) {
+            pause();
+        }
+        if (!game.isStarted()) {
+            finishReplay();
+            if (autoplayer != null && ++demoRestartTicks >= DEMO_RESTART_TICKS) {
+                demoRestartTicks = 0;
+                start();
+            }
+            return;
+        }
+        if (isPaused) {
+            return;
+        }
+        if (autoplayer != null) {
+            autoplayer.update(game);
+        }
+        int animationStep = game.clearTicks() / ANIMATION_STEP_TICKS;
+        boolean clearing = game.clearMask() != 0;
+        long stepStart = clearing ? System.nanoTime() : 0;
+        game.step();
+        if (clearing && game.clearMask() == 0) {
+            metrics.lineClearTime.record(System.nanoTime() - stepStart);
+        }
+        if (game.clearTicks() / ANIMATION_STEP_TICKS != animationStep) {
+            dirty = true;
+        }
+        if (!game.isStarted()) {
+            finishReplay();
+        }
+    }
+    
+    @Override
+    public void render(double alpha) {
+        BufferStrategy strategy = getBufferStrategy();
+        if (strategy == null) {
+            return;
+        }
+        synchronized (lock) {
+            if (showOverlay && shownOverlay != metrics.overlay()
+                    || getWidth() != layoutWidth || getHeight() != layoutHeight) {
+                dirty = true;
+            }
+            if (!dirty && fallFraction(alpha) == 0) {
+                return;
+            }
+            dirty = false;
+            GameEvents.Paint event = null;
+            if (GameEvents.recording()) {
+                event = new GameEvents.Paint();
+                event.begin();
+            }
+            do {
+                do {
+                    Graphics g = strategy.getDrawGraphics();
+                    try {
+                        draw(g, alpha);
+                    } finally {
+                        g.dispose();
+                    }
+                } while (strategy.contentsRestored());
+                strategy.show();
+            } while (strategy.contentsLost());
+            if (event != null && event.shouldCommit()) {
+                event.board(engine, engine.curPiece().getShape());
+                event.commit();
+            }
+        }
+        Toolkit.getDefaultToolkit().sync();
+        input.frameShown(System.nanoTime());
+    }
+    
+    /** How far the current piece has fallen towards the next row, 0 when it is resting. */
+    private double fallFraction(double alpha) {
+        if (!game.isPieceActive() || isPaused || engine.curY() == engine.dropY()) {
+            return 0;
+        }
+        return Math.min(1.0, (game.gravityCounter() + alpha) / game.gravityTicks());
+    }
+    
+    class GameListener implements TetrisGame.Listener {
+        @Override
+        public void linesCleared(int numLines) {
+            if (game.score() > highScore) {
+                highScore = game.score();
+            }
+            updateLabels();
+        }
+        
+        @Override
+        public void pieceSpawned() {
+            if (autoplayer != null) {
+                autoplayer.reset();
+            }
+            if (nextPanel != null) {
+                nextPanel.repaint();
+            }
+        }
+        
+        @Override
+        public void holdChanged() {
+            if (holdPanel != null) {
+                holdPanel.repaint();
+            }
+        }
+        
+        @Override
+        public void gameOver() {
+            GameResult result = GameResult.of(game);
+            leaderboard.submit(result);
+            if (archive != null) {
+                // Only writes mapped memory; the OS flushes it to disk
+                try {
+                    archive.append(result);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    archive = null;
+                }
+            }
+            dirty = true;
+        }
+    }
+    
+    private Tetrominoes shapeAt(int x, int y) {
+        return engine.shapeAt(x, y);
+    }
+    
+    public void start() {
+        if (isPaused) {
+            return;
+        }
+        
+        synchronized (lock) {
+            game.start();
+            dirty = true;
+            if (replayDir != null) {
+                startReplay();
+            }
+        }
+        updateLabels();
+    }
+    
+    /** Ends the replay of the game that just ended; moves of the last step are already recorded. */
+    private void finishReplay() {
+        if (recorder != null) {
+            recorder.finish(game.steps(), game.score(), game.linesRemoved(), game.level());
+            recorder = null;
+        }
+    }
+    
+    private void startReplay() {
+        closeReplay();
+        String name = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+                + String.format("-%016x.replay", game.seed());
+        try {
+            recorder = ReplayRecorder.create(replayDir.resolve(name), randomizer, game.seed(),
+                    engine.width(), engine.height());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    /** Starts the game loop, rendering at the refresh rate of the screen showing the board. */
+    public void startLoop() {
+        int refreshRate = getGraphicsConfiguration().getDevice().getDisplayMode().getRefreshRate();
+        if (refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN) {
+            refreshRate = GameLoop.TICKS_PER_SECOND;
+        }
+        createBufferStrategy(2);
+        loop = new GameLoop(this, refreshRate, metrics);
+        loop.start();
+    }
+    
+    private void pause() {
+        if (!game.isStarted()) {
+            return;
+        }
+        
+        isPaused = !isPaused;
+        dirty = true;
+    }
+    
+    @Override
+    public void paint(Graphics g) {
+        synchronized (lock) {
+            draw(g, 0);
+        }
+    }
+    
+    private void draw(Graphics g, double alpha) {
+        Graphics2D g2d = (Graphics2D) g;
+        // The scale of the canvas comes from its screen configuration, so it changes only with it
+        if (g2d.getDeviceConfiguration() != layoutConfig || getWidth() != layoutWidth || getHeight() != layoutHeight) {
+            layout(g2d);
+        }
+        if (staticLayer == null) {
+            return;
+        }
+        // Everything from here on is in device pixels
+        g2d.setTransform(deviceTransform);
+        g.drawImage(staticLayer, 0, 0, null);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        
+        followPiece();
+        
+        // Draw board pieces
+        for (int i = 0; i < viewRows; i++) {
+            int y = viewY + viewRows - 1 - i;
+            if (engine.isRowEmpty(y)) {
+                continue;
+            }
+            boolean isAnimating = game.isClearing(y);
+            if (isAnimating && (game.clearTicks() / ANIMATION_STEP_TICKS) % 2 != 0) {
+                continue;
+            }
+            for (int j = 0; j < viewColumns; j++) {
+                Tetrominoes shape = shapeAt(viewX + j, y);
+                if (shape != Tetrominoes.NoShape) {
+                    boardSprites.draw(g, boardX + j * cellPixels, boardY + i * cellPixels, shape);
+                }
+            }
+        }
+        
+        // Draw ghost piece
+        Tetromino curPiece = engine.curPiece();
+        int curX = engine.curX();
+        int curY = engine.curY();
+        if (curPiece.getShape() != Tetrominoes.NoShape) {
+            int dropY = engine.dropY();
+            g.setColor(GHOST);
+            for (int i = 0; i < 4; i++) {
+                int x = curX + curPiece.x(i);
+                int y = dropY - curPiece.y(i);
+                if (isVisible(x, y)) {
+                    g.fillRect(screenX(x) + 1, screenY(y) + 1, cellPixels - 2, cellPixels - 2);
+                }
+            }
+        }
+        
+        // Draw current piece, part of the way to the next row
+        if (curPiece.getShape() != Tetrominoes.NoShape) {
+            int fall = (int) (fallFraction(alpha) * cellPixels);
+            for (int i = 0; i < 4; i++) {
+                int x = curX + curPiece.x(i);
+                int y = curY - curPiece.y(i);
+                if (isVisible(x, y)) {
+                    boardSprites.draw(g, screenX(x), screenY(y) + fall, curPiece.getShape());
+                }
+            }
+        }
+        
+        // Draw pause overlay
+        if (isPaused) {
+            g.setColor(SHADE);
+            g.fillRect(0, 0, deviceWidth, deviceHeight);
+            g.setColor(Color.WHITE);
+            g.setFont(bannerFont);
+            g.drawString("PAUSED", deviceWidth / 2 - (int) (100 * scale), deviceHeight / 2);
+        }
+        
+        // Draw game over overlay
+        if (!game.isStarted() && game.score() > 0) {
+            g.setColor(SHADE);
+            g.fillRect(0, 0, deviceWidth, deviceHeight);
+            g.setColor(Color.RED);
+            g.setFont(bannerFont);
+            g.drawString("GAME OVER", deviceWidth / 2 - (int) (150 * scale), deviceHeight / 2);
+        }
+        
+        if (showOverlay) {
+            drawOverlay(g);
+        }
+    }
+    
+    /**
+     * Scrolls the viewport as little as keeps the current piece, and where it
+     * will land when both fit, {@link #VIEW_MARGIN} cells inside it.
+     */
+    private void followPiece() {
+        Tetromino piece = engine.curPiece();
+        if (piece.getShape() == Tetrominoes.NoShape) {
+            return;
+        }
+        int left = engine.curX() + piece.minX();
+        int right = engine.curX() + piece.maxX();
+        int bottom = engine.curY() - piece.maxY();
+        int top = engine.curY() - piece.minY();
+        int landing = engine.dropY() - piece.maxY();
+        if (top - landing + 1 + 2 * VIEW_MARGIN <= viewRows) {
+            bottom = landing;
+        }
+        viewX = Math.max(Math.min(viewX, left - VIEW_MARGIN), right + VIEW_MARGIN + 1 - viewColumns);
+        viewX = Math.max(0, Math.min(viewX, engine.width() - viewColumns));
+        viewY = Math.max(Math.min(viewY, bottom - VIEW_MARGIN), top + VIEW_MARGIN + 1 - viewRows);
+        viewY = Math.max(0, Math.min(viewY, engine.height() - viewRows));
+    }
+    
+    private boolean isVisible(int x, int y) {
+        return x >= viewX && x < viewX + viewColumns && y >= viewY && y < viewY + viewRows;
+    }
+    
+    /** Left edge in device pixels of board column {@code x}. */
+    private int screenX(int x) {
+        return boardX + (x - viewX) * cellPixels;
+    }
+    
+    /** Top edge in device pixels of board row {@code y}. */
+    private int screenY(int y) {
+        return boardY + (viewY + viewRows - 1 - y) * cellPixels;
+    }
+    
+    /**
+     * Fits the layout to the canvas and the scale of its screen, and renders
+     * the background and the tiles at the new resolution.
+     */
+    private void layout(Graphics2D g) {
+        AffineTransform transform = g.getTransform();
+        double deviceScale = transform.getScaleX();
+        deviceTransform.setToTranslation(transform.getTranslateX(), transform.getTranslateY());
+        layoutConfig = g.getDeviceConfiguration();
+        layoutWidth = getWidth();
+        layoutHeight = getHeight();
+        deviceWidth = (int) Math.ceil(layoutWidth * deviceScale);
+        deviceHeight = (int) Math.ceil(layoutHeight * deviceScale);
+        scale = deviceScale * Math.min(layoutWidth / (double) DESIGN_WIDTH, layoutHeight / (double) DESIGN_HEIGHT);
+        
+        // Whole pixels per cell, so that the tiles meet without seams
+        cellPixels = Math.max(1, (int) (cellSize * scale));
+        boardX = (int) Math.round((deviceWidth - DESIGN_WIDTH * scale) / 2 + VIEW_LEFT * scale);
+        boardY = (int) Math.round((deviceHeight - DESIGN_HEIGHT * scale) / 2 + VIEW_TOP * scale);
+        bannerFont = BANNER_FONT.deriveFont((float) (BANNER_FONT.getSize2D() * scale));
+        overlayFont = OVERLAY_FONT.deriveFont((float) (OVERLAY_FONT.getSize2D() * scale));
+        if (boardSprites == null || boardSprites.width() != cellPixels) {
+            if (boardSprites != null) {
+                boardSprites.flush();
+            }
+            boardSprites = new CellSprites(cellPixels);
+        }
+        
+        if (staticLayer != null) {
+            staticLayer.flush();
+            staticLayer = null;
+        }
+        if (deviceWidth > 0 && deviceHeight > 0) {
+            staticLayer = layoutConfig.createCompatibleImage(deviceWidth, deviceHeight, Transparency.OPAQUE);
+            renderStaticLayer(staticLayer);
+        }
+    }
+    
+    private void renderStaticLayer(BufferedImage layer) {
+        Graphics2D g = layer.createGraphics();
+        try {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, layer.getWidth(), layer.getHeight());
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            
+            // Draw board background
+            g.setColor(BOARD_BACKGROUND);
+            int right = boardX + viewColumns * cellPixels;
+            int bottom = boardY + viewRows * cellPixels;
+            g.fillRect(boardX, boardY, viewColumns * cellPixels, viewRows * cellPixels);
+            
+            // Draw grid
+            g.setColor(GRID);
+            for (int i = 0; i <= viewColumns; i++) {
+                g.drawLine(boardX + i * cellPixels, boardY, boardX + i * cellPixels, bottom);
+            }
+            for (int i = 0; i <= viewRows; i++) {
+                g.drawLine(boardX, boardY + i * cellPixels, right, boardY + i * cellPixels);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+    
+    /** Draws the {@link PerformanceMetrics} of the last second over the top of the board. */
+    private void drawOverlay(Graphics g) {
+        String[] lines = metrics.overlay();
+        shownOverlay = lines;
+        g.setColor(OVERLAY_BACKGROUND);
+        int inset = (int) Math.round(2 * scale);
+        g.fillRect(boardX + inset, boardY + inset, viewColumns * cellPixels - 2 * inset,
+                (int) Math.round((lines.length * 14 + 8) * scale));
+        g.setColor(OVERLAY_TEXT);
+        g.setFont(overlayFont);
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], boardX + (int) Math.round(8 * scale), boardY + (int) Math.round((18 + i * 14) * scale));
+        }
+    }
+    
+    private void updateLabels() {
+        String score = String.valueOf(game.score());
+        String level = String.valueOf(game.level());
+        String lines = String.valueOf(game.linesRemoved());
+        String best = String.valueOf(highScore);
+        SwingUtilities.invokeLater(() -> {
+            // The leaderboard can finish loading before createSidePanel() has made the labels
+            if (scoreLabel == null) {
+                return;
+            }
+            scoreLabel.setText(score);
+            levelLabel.setText(level);
+            linesLabel.setText(lines);
+            highScoreLabel.setText(best);
+        });
+    }
+    
+    class TAdapter extends KeyAdapter {
+        @Override
+        public void keyPressed(KeyEvent e) {
+            queueKey(e, true);
+        }
+        
+        @Override
+        public void keyReleased(KeyEvent e) {
+            queueKey(e, false);
+        }
+        
+        private void queueKey(KeyEvent e, boolean pressed) {
+            Controls.Action action = input.controls().action(e.getKeyCode());
+            if (action != null) {
+                input.offer(action, pressed, System.nanoTime());
+            }
+        }
+    }
+    
+    public static void main(String[] args) {
+        SwingUtilities.invokeLater(() -> {
+            JFrame frame = new JFrame("Enhanced Tetris");
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.setLayout(new BorderLayout());
+            
+            PieceGenerator.Kind randomizer = PieceGenerator.Kind.UNIFORM;
+            int width = TetrisEngine.DEFAULT_WIDTH;
+            int height = TetrisEngine.DEFAULT_HEIGHT;
+            boolean record = false;
+            boolean demo = false;
+            boolean spectate = false;
+            boolean resume = false;
+            for (String arg : args) {
+                if (arg.equals("record")) {
+                    record = true;
+                } else if (arg.equals("resume")) {
+                    resume = true;
+                } else if (arg.equals("demo")) {
+                    demo = true;
+                } else if (arg.equals("spectate")) {
+                    spectate = true;
+                } else if (arg.matches("\\d+x\\d+")) {
+                    width = Integer.parseInt(arg.substring(0, arg.indexOf('x')));
+                    height = Integer.parseInt(arg.substring(arg.indexOf('x') + 1));
+                } else {
+                    randomizer = PieceGenerator.Kind.valueOf(arg.toUpperCase());
+                }
+            }
+            Controls controls = Controls.load(new File(Controls.FILE_NAME));
+            EnhancedTetris game = new EnhancedTetris(randomizer, controls, width, height);
+            if (record) {
+                game.recordReplays(Paths.get("replays"));
+                Runtime.getRuntime().addShutdownHook(new Thread(game::closeReplay));
+            }
+            Path suspended = Paths.get(GameSnapshot.FILE_NAME);
+            if (resume) {
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        game.suspendGame(suspended);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }));
+            }
+            game.setDemo(demo);
+            try {
+                game.metrics().register();
+            } catch (JMException e) {
+                e.printStackTrace();
+            }
+            // Checked before the server binds its port, so a board too large to stream leaves nothing open
+            if (spectate && !SpectatorState.fits(width, height)) {
+                System.err.println("Board too large to stream: " + width + "x" + height);
+            } else if (spectate) {
+                try {
+                    SpectatorServer server = new SpectatorServer(
+                            new InetSocketAddress("127.0.0.1", SpectatorServer.DEFAULT_PORT));
+                    game.streamTo(server);
+                    server.start();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    game.leaderboard().close(1, TimeUnit.SECONDS);
+                    if (game.archive() != null) {
+                        game.archive().close();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }));
+            frame.add(game, BorderLayout.CENTER);
+            frame.add(game.createSidePanel(), BorderLayout.EAST);
+            
+            frame.pack();
+            frame.setLocationRelativeTo(null);
+            frame.setVisible(true);
+            game.requestFocus();
+            
+            boolean resumed = false;
+            if (resume && Files.exists(suspended)) {
+                try {
+                    game.resumeGame(suspended);
+                    resumed = true;
+                } catch (IOException | IllegalArgumentException e) {
+                    e.printStackTrace();
+                }
+            }
+            if (!resumed) {
+                game.start();
+            }
+            game.startLoop();
+        });
+    }
+}
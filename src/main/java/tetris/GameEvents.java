@@ -0,0 +1,188 @@
+package tetris;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events of the game, so that hitches can be lined up
+ * with GC pauses and safepoints in the same recording.
+ *
+ * The board events are sent from {@link TetrisGame}, which the simulator
+ * and the game server also run millions of times a second, so their emitters
+ * return after one volatile read unless a recording is running. Escape
+ * analysis alone does not reliably remove the unused event there. The paint
+ * event is checked the same way through {@link #recording()}, so that a frame
+ * allocates nothing; the rare score write uses the plain
+ * {@link Event#shouldCommit()} idiom.
+ */
+final class GameEvents {
+    /** True while any recording is running, kept up to date by a recorder listener. */
+    private static volatile boolean recording;
+
+    static {
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recordingStateChanged(Recording changed) {
+                updateRecording();
+            }
+        });
+        // Recordings started before this class was loaded
+        if (FlightRecorder.isInitialized()) {
+            updateRecording();
+        }
+    }
+
+    private GameEvents() {
+    }
+
+    /** Whether any recording is running; events may still be disabled by its settings. */
+    static boolean recording() {
+        return recording;
+    }
+
+    private static void updateRecording() {
+        boolean running = false;
+        for (Recording each : FlightRecorder.getFlightRecorder().getRecordings()) {
+            running |= each.getState() == RecordingState.RUNNING;
+        }
+        recording = running;
+    }
+
+    /** Fields every board event carries. */
+    @Category("Tetris")
+    @StackTrace(false)
+    abstract static class BoardEvent extends Event {
+        @Label("Stack Height")
+        @Description("Rows up to the highest locked cell")
+        int stackHeight;
+
+        @Label("Active Shape")
+        String shape;
+
+        void board(TetrisEngine engine, Tetrominoes active) {
+            stackHeight = engine.stackTop();
+            shape = active.name();
+        }
+    }
+
+    @Name("tetris.PieceSpawn")
+    @Label("Piece Spawn")
+    static final class PieceSpawn extends BoardEvent {
+    }
+
+    @Name("tetris.PieceLock")
+    @Label("Piece Lock")
+    static final class PieceLock extends BoardEvent {
+        @Label("X")
+        int x;
+
+        @Label("Y")
+        int y;
+
+        @Label("Rotation")
+        int rotation;
+    }
+
+    /** Sent when the rows complete, before they are removed. */
+    @Name("tetris.LineClear")
+    @Label("Line Clear")
+    static final class LineClear extends BoardEvent {
+        @Label("Lines")
+        int lines;
+    }
+
+    @Name("tetris.LevelChange")
+    @Label("Level Change")
+    static final class LevelChange extends BoardEvent {
+        @Label("Level")
+        int level;
+
+        @Label("Gravity Delay")
+        @Timespan(Timespan.MILLISECONDS)
+        long delay;
+    }
+
+    @Name("tetris.Paint")
+    @Label("Paint")
+    @Description("Drawing and showing one frame of the board")
+    static final class Paint extends BoardEvent {
+    }
+
+    @Name("tetris.ScoreWrite")
+    @Label("Score Write")
+    @Description("Writing a batch of results to the score log")
+    @Category("Tetris")
+    @StackTrace(false)
+    static final class ScoreWrite extends Event {
+        @Label("Results")
+        int results;
+
+        @Label("Size")
+        @DataAmount
+        long bytes;
+
+        @Label("Durability")
+        String durability;
+    }
+
+    static void pieceSpawned(TetrisEngine engine) {
+        if (!recording) {
+            return;
+        }
+        PieceSpawn event = new PieceSpawn();
+        if (event.shouldCommit()) {
+            event.board(engine, engine.curPiece().getShape());
+            event.commit();
+        }
+    }
+
+    static void pieceLocked(TetrisEngine engine) {
+        if (!recording) {
+            return;
+        }
+        PieceLock event = new PieceLock();
+        if (event.shouldCommit()) {
+            event.board(engine, engine.curPiece().getShape());
+            event.x = engine.curX();
+            event.y = engine.curY();
+            event.rotation = engine.curPiece().getRotation();
+            event.commit();
+        }
+    }
+
+    /** {@code locked} is the piece that completed the lines, no longer the active one. */
+    static void linesCleared(TetrisEngine engine, Tetrominoes locked, int lines) {
+        if (!recording) {
+            return;
+        }
+        LineClear event = new LineClear();
+        if (event.shouldCommit()) {
+            event.board(engine, locked);
+            event.lines = lines;
+            event.commit();
+        }
+    }
+
+    static void levelChanged(TetrisEngine engine, Tetrominoes locked, int level, int delay) {
+        if (!recording) {
+            return;
+        }
+        LevelChange event = new LevelChange();
+        if (event.shouldCommit()) {
+            event.board(engine, locked);
+            event.level = level;
+            event.delay = delay;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package tetris;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed-timestep loop running on its own thread.
+ *
+ * The simulation advances in steps of exactly {@code 1 / TICKS_PER_SECOND},
+ * scheduled against {@link System#nanoTime()} rather than a timer, so a late
+ * step is followed by catch-up steps instead of stretching game time. Frames
+ * are paced separately at the display rate and are told how far into the
+ * next step they are, so motion between steps can be interpolated.
+ *
+ * Every step records how late it ran against its schedule; the mean and the
+ * worst lateness over the last second are published as the tick jitter.
+ * With {@link PerformanceMetrics} attached, every step and frame is also
+ * timed into its histograms.
+ */
+final class GameLoop implements Runnable {
+    static final int TICKS_PER_SECOND = 60;
+    static final long TICK_NANOS = 1_000_000_000L / TICKS_PER_SECOND;
+
+    /** Steps run back to back before the loop drops the rest of its backlog. */
+    private static final int MAX_CATCH_UP = 5;
+    /** Sleeps stop this early and yield the rest, parkNanos overshoots by about this much. */
+    private static final long SPIN_NANOS = 1_000_000L;
+    private static final long SECOND = 1_000_000_000L;
+
+    interface Stage {
+        /** Advances the game by one fixed step. */
+        void update();
+
+        /** Draws a frame; {@code alpha} is the fraction of the next step already elapsed. */
+        void render(double alpha);
+    }
+
+    private final Stage stage;
+    private final long frameNanos;
+    private final PerformanceMetrics metrics;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    private volatile long meanJitterNanos = 0;
+    private volatile long maxJitterNanos = 0;
+    private volatile int ticksPerSecond = 0;
+    private volatile int framesPerSecond = 0;
+
+    GameLoop(Stage stage, int framesPerSecond) {
+        this(stage, framesPerSecond, null);
+    }
+
+    GameLoop(Stage stage, int framesPerSecond, PerformanceMetrics metrics) {
+        this.stage = stage;
+        this.frameNanos = SECOND / framesPerSecond;
+        this.metrics = metrics;
+    }
+
+    synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "game-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            thread = null;
+        }
+    }
+
+    /** Mean lateness of the steps run in the last second. */
+    long meanJitterNanos() {
+        return meanJitterNanos;
+    }
+
+    /** Worst lateness of the steps run in the last second. */
+    long maxJitterNanos() {
+        return maxJitterNanos;
+    }
+
+    int ticksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    int framesPerSecond() {
+        return framesPerSecond;
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.nanoTime();
+        long nextFrame = nextTick;
+        long windowEnd = nextTick + SECOND;
+        long jitterSum = 0;
+        long jitterMax = 0;
+        int ticks = 0;
+        int frames = 0;
+
+        while (running) {
+            long now = System.nanoTime();
+            for (int steps = 0; now - nextTick >= 0; steps++) {
+                if (steps == MAX_CATCH_UP) {
+                    // Too far behind to catch up, slow the game down instead
+                    if (metrics != null) {
+                        metrics.ticksDropped((now - nextTick) / TICK_NANOS + 1);
+                    }
+                    nextTick = now + TICK_NANOS;
+                    break;
+                }
+                long late = now - nextTick;
+                jitterSum += late;
+                jitterMax = Math.max(jitterMax, late);
+                ticks++;
+                long started = now;
+                stage.update();
+                nextTick += TICK_NANOS;
+                now = System.nanoTime();
+                if (metrics != null) {
+                    metrics.tickRan(late, now - started);
+                }
+            }
+
+            if (now - nextFrame >= 0) {
+                double alpha = 1.0 - (double) (nextTick - now) / TICK_NANOS;
+                stage.render(Math.max(0.0, Math.min(1.0, alpha)));
+                if (metrics != null) {
+                    metrics.frameRendered(System.nanoTime() - now);
+                }
+                frames++;
+                nextFrame += frameNanos;
+                if (now - nextFrame >= 0) {
+                    // Missed frames are skipped, not rendered back to back
+                    nextFrame = now + frameNanos;
+                }
+            }
+
+            if (now - windowEnd >= 0) {
+                meanJitterNanos = ticks == 0 ? 0 : jitterSum / ticks;
+                maxJitterNanos = jitterMax;
+                ticksPerSecond = ticks;
+                framesPerSecond = frames;
+                if (metrics != null) {
+                    metrics.roll(ticks, frames);
+                }
+                jitterSum = 0;
+                jitterMax = 0;
+                ticks = 0;
+                frames = 0;
+                windowEnd = now + SECOND;
+            }
+
+            sleepUntil(nextTick - nextFrame < 0 ? nextTick : nextFrame);
+        }
+    }
+
+    private void sleepUntil(long deadline) {
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package tetris;
+
+/** Outcome of one finished game, as kept by the {@link Leaderboard}. */
+final class GameResult {
+    final int score;
+    final int lines;
+    final int level;
+    final long durationMillis;
+    /** When the game ended, in milliseconds since the epoch. */
+    final long timestamp;
+
+    GameResult(int score, int lines, int level, long durationMillis, long timestamp) {
+        this.score = score;
+        this.lines = lines;
+        this.level = level;
+        this.durationMillis = durationMillis;
+        this.timestamp = timestamp;
+    }
+
+    /** The result of {@code game}, which has just ended. */
+    static GameResult of(TetrisGame game) {
+        return new GameResult(game.score(), game.linesRemoved(), game.level(),
+                game.steps() * 1000L / GameLoop.TICKS_PER_SECOND, System.currentTimeMillis());
+    }
+
+    /** True if this result ranks above {@code other}: higher score, then earlier. */
+    boolean ranksAbove(GameResult other) {
+        return score != other.score ? score > other.score : timestamp < other.timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return score + " points, " + lines + " lines, level " + level;
+    }
+}
@@ -0,0 +1,383 @@
+package tetris;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hosts many headless {@link GameSession}s behind a line-based TCP protocol,
+ * stepped by a shared {@link TickWheel}.
+ *
+ * One thread serves every connection through a {@link Selector}. Commands
+ * are one ASCII line each and are answered in order:
+ * <pre>
+ * NEW [seed]            OK &lt;id&gt;
+ * KEY &lt;id&gt; &lt;action&gt;     OK            (a {@link Controls.Action} move, applied before the next step)
+ * STATE &lt;id&gt;            STATE &lt;id&gt; ...  (see {@link GameSession#describe})
+ * RESTART &lt;id&gt; [seed]   OK &lt;id&gt;
+ * CLOSE &lt;id&gt;            OK
+ * STATS                 STATS sessions=.. steps=.. p50us=.. p99us=.. maxus=.. overruns=..
+ * RESET                 OK            (clears the tick latency histogram)
+ * </pre>
+ * Errors are answered with {@code ERR <reason>}. A session can only be moved,
+ * restarted or closed by the connection that created it, and is closed with
+ * it. A connection whose replies back up beyond {@link #OUTPUT_LIMIT} is
+ * dropped, which bounds the memory every client can hold on to. When a
+ * connection cannot be accepted, e.g. because the process is out of file
+ * descriptors, accepting pauses until a connection closes or for
+ * {@link #ACCEPT_RETRY_MILLIS}, and the server keeps listening.
+ *
+ * Usage: {@code GameServer [port] [tick threads] [max sessions]}
+ */
+class GameServer implements Runnable {
+    static final int DEFAULT_PORT = 7777;
+    static final int MAX_LINE = 256;
+    static final int OUTPUT_LIMIT = 64 * 1024;
+    static final long ACCEPT_RETRY_MILLIS = 1000;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final SelectionKey serverKey;
+    /** When accepting was paused after a failure, or 0 while accepting. */
+    private long acceptPausedAt = 0;
+    private final TickWheel wheel;
+    private final int maxSessions;
+    private final Map<Integer, GameSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger(1);
+    private final StringBuilder reply = new StringBuilder();
+    private volatile boolean running = true;
+
+    /** Per-connection buffers and the sessions it owns. */
+    private static final class Connection {
+        final ByteBuffer in = ByteBuffer.allocate(MAX_LINE * 4);
+        final ByteBuffer out = ByteBuffer.allocate(OUTPUT_LIMIT);
+        final List<GameSession> owned = new ArrayList<>();
+    }
+
+    GameServer(InetSocketAddress address, int tickThreads, int maxSessions) throws IOException {
+        this.server = ServerSocketChannel.open();
+        this.server.bind(address);
+        this.server.configureBlocking(false);
+        this.selector = Selector.open();
+        this.serverKey = this.server.register(selector, SelectionKey.OP_ACCEPT);
+        this.wheel = new TickWheel(tickThreads);
+        this.maxSessions = maxSessions;
+    }
+
+    TickWheel wheel() {
+        return wheel;
+    }
+
+    int sessionCount() {
+        return sessions.size();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        wheel.start();
+        try {
+            while (running) {
+                selector.select(acceptPausedAt != 0 ? ACCEPT_RETRY_MILLIS : 0);
+                if (acceptPausedAt != 0 && System.nanoTime() - acceptPausedAt >= ACCEPT_RETRY_MILLIS * 1_000_000L) {
+                    resumeAccepting();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            read(key);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(key);
+                        }
+                    } catch (IOException e) {
+                        disconnect(key);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            wheel.stop();
+            try {
+                selector.close();
+                server.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /** Accepts every pending connection; a failure only affects the connection it happened on. */
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                // The listening socket stays ready, so stop selecting it until something changes
+                System.err.println("accept failed: " + e.getMessage());
+                serverKey.interestOps(0);
+                acceptPausedAt = System.nanoTime();
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                channel.register(selector, SelectionKey.OP_READ, new Connection());
+            } catch (IOException e) {
+                System.err.println("accept failed: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException closeFailed) {
+                    // Already gone
+                }
+            }
+        }
+    }
+
+    private void resumeAccepting() {
+        if (acceptPausedAt != 0) {
+            acceptPausedAt = 0;
+            serverKey.interestOps(SelectionKey.OP_ACCEPT);
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        if (channel.read(connection.in) < 0) {
+            disconnect(key);
+            return;
+        }
+        ByteBuffer in = connection.in;
+        in.flip();
+        int lineStart = in.position();
+        for (int i = in.position(); i < in.limit(); i++) {
+            if (in.get(i) == '\n') {
+                String line = new String(in.array(), lineStart, i - lineStart, StandardCharsets.US_ASCII).trim();
+                lineStart = i + 1;
+                reply.setLength(0);
+                handle(connection, line);
+                reply.append('\n');
+                if (!queue(connection, reply)) {
+                    disconnect(key);
+                    return;
+                }
+            }
+        }
+        in.position(lineStart);
+        in.compact();
+        if (!in.hasRemaining()) {
+            // A line longer than the buffer
+            disconnect(key);
+            return;
+        }
+        flush(key);
+    }
+
+    private void handle(Connection connection, String line) {
+        String[] parts = line.split(" ");
+        try {
+            switch (parts[0]) {
+                case "NEW": {
+                    if (sessions.size() >= maxSessions) {
+                        reply.append("ERR server full");
+                        return;
+                    }
+                    long seed = parts.length > 1 ? Long.parseLong(parts[1]) : ThreadLocalRandom.current().nextLong();
+                    GameSession session = new GameSession(nextId.getAndIncrement(), PieceGenerator.Kind.BAG, seed);
+                    sessions.put(session.id, session);
+                    connection.owned.add(session);
+                    wheel.add(session);
+                    reply.append("OK ").append(session.id);
+                    return;
+                }
+                case "KEY": {
+                    GameSession session = owned(connection, parts);
+                    if (session == null) {
+                        return;
+                    }
+                    Controls.Action move = Controls.Action.valueOf(parts[2]);
+                    if (move.ordinal() > Controls.Action.HOLD.ordinal()) {
+                        reply.append("ERR not a move: ").append(move);
+                    } else if (!session.offer(move)) {
+                        reply.append("ERR too many moves");
+                    } else {
+                        reply.append("OK");
+                    }
+                    return;
+                }
+                case "STATE": {
+                    GameSession session = sessions.get(Integer.parseInt(parts[1]));
+                    if (session == null) {
+                        reply.append("ERR no session ").append(parts[1]);
+                    } else {
+                        session.describe(reply);
+                    }
+                    return;
+                }
+                case "RESTART": {
+                    GameSession session = owned(connection, parts);
+                    if (session != null) {
+                        session.restart(parts.length > 2 ? Long.parseLong(parts[2])
+                                : ThreadLocalRandom.current().nextLong());
+                        reply.append("OK ").append(session.id);
+                    }
+                    return;
+                }
+                case "CLOSE": {
+                    GameSession session = owned(connection, parts);
+                    if (session != null) {
+                        connection.owned.remove(session);
+                        close(session);
+                        reply.append("OK");
+                    }
+                    return;
+                }
+                case "STATS":
+                    stats(reply);
+                    return;
+                case "RESET":
+                    wheel.resetLatency();
+                    reply.append("OK");
+                    return;
+                default:
+                    reply.append("ERR unknown command ").append(parts[0]);
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            reply.setLength(0);
+            reply.append("ERR bad command: ").append(line);
+        }
+    }
+
+    /** The session named by {@code parts[1]} if {@code connection} owns it; otherwise writes an error. */
+    private GameSession owned(Connection connection, String[] parts) {
+        GameSession session = sessions.get(Integer.parseInt(parts[1]));
+        if (session == null || !connection.owned.contains(session)) {
+            reply.append("ERR no session ").append(parts[1]);
+            return null;
+        }
+        return session;
+    }
+
+    /** Appends the session count, steps and tick latency percentiles since the last reset. */
+    void stats(StringBuilder out) {
+        long[] latency = LatencyHistogram.newCounts();
+        wheel.latency(latency);
+        out.append("STATS sessions=").append(sessions.size())
+                .append(" steps=").append(wheel.steps())
+                .append(" p50us=").append(LatencyHistogram.percentile(latency, 50) / 1000)
+                .append(" p99us=").append(LatencyHistogram.percentile(latency, 99) / 1000)
+                .append(" p999us=").append(LatencyHistogram.percentile(latency, 99.9) / 1000)
+                .append(" maxus=").append(LatencyHistogram.max(latency) / 1000)
+                .append(" overruns=").append(wheel.overruns());
+    }
+
+    private void close(GameSession session) {
+        session.close();
+        sessions.remove(session.id);
+    }
+
+    /** Copies {@code text} into the output buffer; false if the client has fallen too far behind. */
+    private static boolean queue(Connection connection, CharSequence text) {
+        ByteBuffer out = connection.out;
+        if (out.remaining() < text.length()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            out.put((byte) text.charAt(i));
+        }
+        return true;
+    }
+
+    private void flush(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer out = connection.out;
+        out.flip();
+        ((SocketChannel) key.channel()).write(out);
+        boolean pending = out.hasRemaining();
+        out.compact();
+        key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    private void disconnect(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        if (connection != null) {
+            for (GameSession session : connection.owned) {
+                close(session);
+            }
+            connection.owned.clear();
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already gone
+        }
+        // A descriptor was freed
+        resumeAccepting();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int maxSessions = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+
+        GameServer server = new GameServer(new InetSocketAddress("127.0.0.1", port), threads, maxSessions);
+        Thread io = new Thread(server, "game-server");
+        io.start();
+        System.out.printf("listening on 127.0.0.1:%d with %d tick threads%n", port, threads);
+
+        long lastSteps = 0;
+        long[] last = LatencyHistogram.newCounts();
+        while (io.isAlive()) {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                break;
+            }
+            long steps = server.wheel.steps();
+            long[] latency = LatencyHistogram.newCounts();
+            server.wheel.latency(latency);
+            long[] window = latency.clone();
+            for (int i = 0; i < window.length; i++) {
+                window[i] = Math.max(0, window[i] - last[i]);
+            }
+            System.out.printf("%d sessions, %d steps/s, tick latency p50 %d us, p99 %d us, max %d us, %d overruns%n",
+                    server.sessionCount(), (steps - lastSteps) / 5,
+                    LatencyHistogram.percentile(window, 50) / 1000, LatencyHistogram.percentile(window, 99) / 1000,
+                    LatencyHistogram.max(window) / 1000, server.wheel.overruns());
+            lastSteps = steps;
+            last = latency;
+        }
+    }
+}
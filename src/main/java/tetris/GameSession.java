@@ -0,0 +1,85 @@
+package tetris;
+
+/**
+ * One headless game hosted by the {@link GameServer}.
+ *
+ * Moves arrive from the network thread through an {@link InputQueue} and
+ * are applied by the {@link TickWheel} thread before each step, the same
+ * order as {@link EnhancedTetris}. Steps and state reads synchronize on the
+ * session; the lock is only ever contended by a state request.
+ */
+final class GameSession {
+    private static final int INPUT_CAPACITY = 64;
+    private static final Controls.Action[] ACTIONS = Controls.Action.values();
+
+    final int id;
+    private final TetrisEngine engine = new TetrisEngine();
+    private final TetrisGame game;
+    private final InputQueue inputs = new InputQueue(INPUT_CAPACITY);
+    private volatile boolean closed = false;
+
+    GameSession(int id, PieceGenerator.Kind randomizer, long seed) {
+        this.id = id;
+        this.game = new TetrisGame(engine, randomizer.create(seed), EnhancedTetris.PREVIEW_SIZE, true);
+        game.start(seed);
+    }
+
+    /** Queues a move for the next step; returns false if too many are pending. */
+    boolean offer(Controls.Action move) {
+        return inputs.offer(move.ordinal(), System.nanoTime());
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    void close() {
+        closed = true;
+    }
+
+    /** Applies the queued moves and advances the game by one step. */
+    synchronized void tick() {
+        while (!inputs.isEmpty()) {
+            Controls.Action move = ACTIONS[inputs.event(0)];
+            inputs.remove(1);
+            if (game.isPieceActive()) {
+                ReplayPlayer.apply(game, move);
+            }
+        }
+        game.step();
+    }
+
+    synchronized void restart(long seed) {
+        game.start(seed);
+    }
+
+    /**
+     * Appends the state of the game as one protocol line: started flag, score,
+     * lines, level, steps, current piece (shape, rotation, x, y) and the rows
+     * bottom first as hexadecimal bit masks.
+     */
+    synchronized void describe(StringBuilder out) {
+        Tetromino piece = engine.curPiece();
+        out.append("STATE ").append(id)
+                .append(' ').append(game.isStarted() ? 1 : 0)
+                .append(' ').append(game.score())
+                .append(' ').append(game.linesRemoved())
+                .append(' ').append(game.level())
+                .append(' ').append(game.steps())
+                .append(' ').append(piece.getShape().ordinal())
+                .append(' ').append(piece.getRotation())
+                .append(' ').append(engine.curX())
+                .append(' ').append(engine.curY())
+                .append(' ');
+        for (int y = 0; y < engine.height(); y++) {
+            if (y > 0) {
+                out.append(',');
+            }
+            out.append(Integer.toHexString(engine.row(y)));
+        }
+    }
+
+    synchronized boolean isOver() {
+        return !game.isStarted();
+    }
+}
@@ -0,0 +1,352 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The full state of a {@link TetrisGame} at one step, which can be written
+ * out, read back and restored into any game with the same board size and
+ * piece generator: to resume a game after a restart, or to fork a live game
+ * into headless continuations.
+ *
+ * The piece generator is saved as it is, with the pieces it has dealt ahead
+ * of the current one, so restoring takes the same time however long the
+ * game has run. Taking a snapshot only reads the rows up to the top of the
+ * stack and takes well under a microsecond on the default board.
+ *
+ * File layout, multi-byte integers big-endian:
+ * <pre>
+ * int    magic "TSNP"
+ * byte   version
+ * byte   piece generator (PieceGenerator.Kind ordinal)
+ * varint board width, varint board height
+ * long   seed
+ * varint pieces dealt by the generator, pieces placed
+ * bytes  generator state, PieceGenerator.Kind.stateBytes: long random state;
+ *        for BAG also byte index of the next shape and the 7 shapes of the bag
+ * varint pieces dealt ahead of the current one (the preview), byte shape each
+ * varint score, lines, level
+ * varint steps, steps since gravity, steps of the line clear animation
+ * varint rows waiting to be cleared: base, mask
+ * byte   flags: 1 started, 2 falling finished, 4 can hold
+ * byte   held piece: shape &lt;&lt; 2 | rotation
+ * byte   current piece: shape &lt;&lt; 2 | rotation; varint x, varint y
+ * varint rows up to the top of the stack
+ * bytes  shape of every cell in those rows, bottom row first, two cells per
+ *        byte (the even column in the low 4 bits), each row starting a byte
+ * int    CRC32 of everything before it
+ * </pre>
+ * Varints are the ones of {@link Replay}.
+ */
+final class GameSnapshot {
+    static final int MAGIC = 0x54534E50;
+    static final int VERSION = 2;
+    /** Where {@link EnhancedTetris} keeps a game suspended on exit. */
+    static final String FILE_NAME = "tetris_suspended.snapshot";
+
+    private static final int STARTED = 1;
+    private static final int FALLING_FINISHED = 2;
+    private static final int CAN_HOLD = 4;
+    /** Every field but the cells, with each varint at its longest. */
+    private static final int MAX_HEADER_BYTES = 96;
+
+    private static final PieceGenerator.Kind[] KINDS = PieceGenerator.Kind.values();
+    private static final Tetrominoes[] SHAPES = Tetrominoes.values();
+
+    final PieceGenerator.Kind kind;
+    final int width;
+    final int height;
+    final long seed;
+    final int piecesDealt;
+    final int piecesPlaced;
+    /** {@link PieceGenerator#saveState} of the generator. */
+    final byte[] generatorState;
+    /** Pieces the generator dealt ahead of the current one, next first. */
+    final Tetromino[] upcoming;
+    final int score;
+    final int lines;
+    final int level;
+    final int steps;
+    final int gravityCounter;
+    final int clearTicks;
+    final int clearBase;
+    final int clearMask;
+    final boolean started;
+    final boolean fallingFinished;
+    final boolean canHold;
+    final Tetromino heldPiece;
+    final Tetromino piece;
+    final int x;
+    final int y;
+    /** Rows in {@code cells}, the height of the stack. */
+    final int rows;
+    /** Shape ordinal of every cell below {@code rows}, {@code width} per row from the bottom. */
+    final byte[] cells;
+
+    private GameSnapshot(PieceGenerator.Kind kind, int width, int height, long seed, int piecesDealt,
+            int piecesPlaced, byte[] generatorState, Tetromino[] upcoming, int score, int lines, int level,
+            int steps, int gravityCounter, int clearTicks, int clearBase, int clearMask, int flags,
+            Tetromino heldPiece, Tetromino piece, int x, int y, int rows, byte[] cells) {
+        this.kind = kind;
+        this.width = width;
+        this.height = height;
+        this.seed = seed;
+        this.piecesDealt = piecesDealt;
+        this.piecesPlaced = piecesPlaced;
+        this.generatorState = generatorState;
+        this.upcoming = upcoming;
+        this.score = score;
+        this.lines = lines;
+        this.level = level;
+        this.steps = steps;
+        this.gravityCounter = gravityCounter;
+        this.clearTicks = clearTicks;
+        this.clearBase = clearBase;
+        this.clearMask = clearMask;
+        this.started = (flags & STARTED) != 0;
+        this.fallingFinished = (flags & FALLING_FINISHED) != 0;
+        this.canHold = (flags & CAN_HOLD) != 0;
+        this.heldPiece = heldPiece;
+        this.piece = piece;
+        this.x = x;
+        this.y = y;
+        this.rows = rows;
+        this.cells = cells;
+    }
+
+    /** Takes a snapshot of {@code game} as it is now. */
+    static GameSnapshot of(TetrisGame game) {
+        TetrisEngine engine = game.engine();
+        int width = engine.width();
+        int rows = engine.stackTop();
+        byte[] cells = new byte[rows * width];
+        for (int y = 0; y < rows; y++) {
+            if (engine.isRowEmpty(y)) {
+                continue;
+            }
+            for (int x = 0; x < width; x++) {
+                cells[y * width + x] = (byte) engine.shapeAt(x, y).ordinal();
+            }
+        }
+        ByteBuffer generatorState = ByteBuffer.allocate(game.generatorKind().stateBytes);
+        game.saveGeneratorState(generatorState);
+        Tetromino[] upcoming = new Tetromino[game.upcomingCount()];
+        for (int i = 0; i < upcoming.length; i++) {
+            upcoming[i] = game.upcoming(i);
+        }
+        int flags = (game.isStarted() ? STARTED : 0) | (game.isFallingFinished() ? FALLING_FINISHED : 0)
+                | (game.canHold() ? CAN_HOLD : 0);
+        return new GameSnapshot(game.generatorKind(), width, engine.height(), game.seed(), game.piecesDealt(),
+                game.piecesPlaced(), generatorState.array(), upcoming, game.score(), game.linesRemoved(),
+                game.level(), game.steps(), game.gravityCounter(), game.clearTicks(), game.clearBase(),
+                game.clearMask(), flags, game.heldPiece(), engine.curPiece(), engine.curX(), engine.curY(), rows,
+                cells);
+    }
+
+    /**
+     * Puts {@code game} back in the state of this snapshot. The game must have
+     * the same board size and kind of generator; its preview may be any size.
+     */
+    void restore(TetrisGame game) {
+        game.restore(this);
+    }
+
+    /** A new headless game in the state of this snapshot, e.g. to play one continuation of it. */
+    TetrisGame newGame(int previewSize, boolean animateLineClears) {
+        TetrisGame game = new TetrisGame(new TetrisEngine(width, height), kind.create(seed), previewSize,
+                animateLineClears);
+        restore(game);
+        return game;
+    }
+
+    /** Upper bound of the bytes {@link #write} takes. */
+    int maxBytes() {
+        return MAX_HEADER_BYTES + generatorState.length + upcoming.length + rows * rowBytes(width);
+    }
+
+    void write(ByteBuffer out) {
+        int start = out.position();
+        out.putInt(MAGIC);
+        out.put((byte) VERSION);
+        out.put((byte) kind.ordinal());
+        Replay.putVarint(out, width);
+        Replay.putVarint(out, height);
+        out.putLong(seed);
+        Replay.putVarint(out, piecesDealt);
+        Replay.putVarint(out, piecesPlaced);
+        out.put(generatorState);
+        Replay.putVarint(out, upcoming.length);
+        for (Tetromino next : upcoming) {
+            out.put((byte) next.getShape().ordinal());
+        }
+        Replay.putVarint(out, score);
+        Replay.putVarint(out, lines);
+        Replay.putVarint(out, level);
+        Replay.putVarint(out, steps);
+        Replay.putVarint(out, gravityCounter);
+        Replay.putVarint(out, clearTicks);
+        Replay.putVarint(out, clearBase);
+        Replay.putVarint(out, clearMask);
+        out.put((byte) ((started ? STARTED : 0) | (fallingFinished ? FALLING_FINISHED : 0)
+                | (canHold ? CAN_HOLD : 0)));
+        out.put(pieceByte(heldPiece));
+        out.put(pieceByte(piece));
+        Replay.putVarint(out, x);
+        Replay.putVarint(out, y);
+        Replay.putVarint(out, rows);
+        for (int row = 0; row < rows * width; row += width) {
+            for (int i = 0; i < width; i += 2) {
+                int high = i + 1 < width ? cells[row + i + 1] : 0;
+                out.put((byte) (cells[row + i] | high << 4));
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(out.duplicate().position(start).limit(out.position()));
+        out.putInt((int) crc.getValue());
+    }
+
+    byte[] toByteArray() {
+        ByteBuffer out = ByteBuffer.allocate(maxBytes());
+        write(out);
+        byte[] bytes = new byte[out.position()];
+        out.flip().get(bytes);
+        return bytes;
+    }
+
+    /** Writes the snapshot to {@code path} through a temporary file, so a crash never leaves half of one. */
+    void write(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        ByteBuffer out = ByteBuffer.wrap(toByteArray());
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static GameSnapshot read(Path path) throws IOException {
+        return read(ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    /** Reads a snapshot filling the rest of {@code in}. */
+    static GameSnapshot read(ByteBuffer in) throws IOException {
+        try {
+            int start = in.position();
+            int end = in.limit() - 4;
+            if (end < start || in.getInt(start) != MAGIC) {
+                throw new IOException("Not a snapshot file");
+            }
+            CRC32 crc = new CRC32();
+            crc.update(in.duplicate().limit(end));
+            if (in.getInt(end) != (int) crc.getValue()) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+            in.position(start + 4);
+            int version = in.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            int kind = in.get();
+            if (kind < 0 || kind >= KINDS.length) {
+                throw new IOException("Unknown piece generator " + kind);
+            }
+            int width = Replay.getVarint(in);
+            int height = Replay.getVarint(in);
+            if (width < 4 || width > TetrisEngine.MAX_WIDTH || height < 4 || height > TetrisEngine.MAX_HEIGHT) {
+                throw new IOException("Unsupported board size " + width + "x" + height);
+            }
+            long seed = in.getLong();
+            int piecesDealt = Replay.getVarint(in);
+            int piecesPlaced = Replay.getVarint(in);
+            byte[] generatorState = new byte[KINDS[kind].stateBytes];
+            in.get(generatorState);
+            try {
+                KINDS[kind].create(0).restoreState(ByteBuffer.wrap(generatorState));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Corrupt piece generator: " + e.getMessage());
+            }
+            int count = Replay.getVarint(in);
+            if (count < 0 || count > in.remaining()) {
+                throw new IOException("Corrupt snapshot");
+            }
+            Tetromino[] upcoming = new Tetromino[count];
+            for (int i = 0; i < count; i++) {
+                Tetrominoes shape = shape(in.get());
+                if (shape == Tetrominoes.NoShape) {
+                    throw new IOException("Corrupt snapshot");
+                }
+                upcoming[i] = Tetromino.of(shape);
+            }
+            int score = Replay.getVarint(in);
+            int lines = Replay.getVarint(in);
+            int level = Replay.getVarint(in);
+            int steps = Replay.getVarint(in);
+            int gravityCounter = Replay.getVarint(in);
+            int clearTicks = Replay.getVarint(in);
+            int clearBase = Replay.getVarint(in);
+            int clearMask = Replay.getVarint(in);
+            int flags = in.get();
+            Tetromino heldPiece = piece(in.get());
+            Tetromino piece = piece(in.get());
+            int x = Replay.getVarint(in);
+            int y = Replay.getVarint(in);
+            if (piece.getShape() != Tetrominoes.NoShape && (x + piece.minX() < 0 || x + piece.maxX() >= width
+                    || y - piece.maxY() < 0 || y - piece.minY() >= height)) {
+                throw new IOException("Piece outside the board");
+            }
+            int rows = Replay.getVarint(in);
+            if (rows < 0 || rows > height || clearBase < 0 || clearBase >= height) {
+                throw new IOException("Corrupt snapshot");
+            }
+            byte[] cells = new byte[rows * width];
+            for (int row = 0; row < cells.length; row += width) {
+                for (int i = 0; i < width; i += 2) {
+                    int b = in.get() & 0xFF;
+                    cells[row + i] = (byte) shape(b & 0xF).ordinal();
+                    if (i + 1 < width) {
+                        cells[row + i + 1] = (byte) shape(b >>> 4).ordinal();
+                    }
+                }
+            }
+            if (in.position() != end) {
+                throw new IOException("Corrupt snapshot");
+            }
+            in.position(in.limit());
+            return new GameSnapshot(KINDS[kind], width, height, seed, piecesDealt, piecesPlaced, generatorState,
+                    upcoming, score, lines, level, steps, gravityCounter, clearTicks, clearBase, clearMask, flags,
+                    heldPiece, piece, x, y, rows, cells);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated snapshot", e);
+        }
+    }
+
+    /** A piece keeps its rotation when it is held. */
+    private static byte pieceByte(Tetromino piece) {
+        return (byte) (piece.getShape().ordinal() << 2 | piece.getRotation());
+    }
+
+    private static Tetromino piece(byte b) throws IOException {
+        return Tetromino.of(shape((b & 0xFF) >>> 2), b & 3);
+    }
+
+    private static Tetrominoes shape(int ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= SHAPES.length) {
+            throw new IOException("Unknown shape " + ordinal);
+        }
+        return SHAPES[ordinal];
+    }
+
+    private static int rowBytes(int width) {
+        return (width + 1) / 2;
+    }
+}
@@ -0,0 +1,225 @@
+package tetris;
+
+/**
+ * Tries every placement {@link TetrisGame#place} can reach for the current
+ * piece, and for the piece {@link TetrisGame#hold} would bring in, and picks
+ * the one leaving the best board. A board is scored as a weighted sum of its
+ * aggregate column height, the lines the placement completes, the holes under
+ * the stack, the bumpiness between neighbouring columns and the total depth
+ * of its wells (columns lower than both neighbours).
+ *
+ * Boards are evaluated on scratch rows kept by the policy, so choosing a move
+ * never allocates; use one instance per thread.
+ */
+class HeuristicPolicy implements MovePolicy {
+    static final int AGGREGATE_HEIGHT = 0;
+    static final int LINES = 1;
+    static final int HOLES = 2;
+    static final int BUMPINESS = 3;
+    static final int WELLS = 4;
+    static final int FEATURES = 5;
+    /** Widest board the scratch rows, one int per row, can hold. */
+    static final int MAX_WIDTH = 31;
+
+    /** Weights of a well-known hand-tuned player, indexed by feature; it ignores wells. */
+    static final double[] DEFAULT_WEIGHTS = { -0.510066, 0.760666, -0.35663, -0.184483, 0 };
+
+    private final double[] weights;
+    private int[] rows = new int[0];
+    private int[] heights = new int[0];
+    private int fullRow;
+    private int stackTop;
+    private long evaluations = 0;
+
+    private double bestScore;
+    private int bestPlacement;
+
+    HeuristicPolicy() {
+        this(DEFAULT_WEIGHTS);
+    }
+
+    HeuristicPolicy(double... weights) {
+        if (weights.length != FEATURES) {
+            throw new IllegalArgumentException("Expected " + FEATURES + " weights, got " + weights.length);
+        }
+        this.weights = weights.clone();
+    }
+
+    /** Number of placements scored so far. */
+    long evaluations() {
+        return evaluations;
+    }
+
+    @Override
+    public int choose(TetrisGame game) {
+        TetrisEngine engine = game.engine();
+        load(engine);
+        Tetromino piece = engine.curPiece();
+        bestScore = Double.NEGATIVE_INFINITY;
+        bestPlacement = MovePolicy.placement(piece.getRotation(), engine.curX(), false);
+        search(engine, piece, engine.curX(), engine.curY(), false);
+
+        if (game.canHold()) {
+            Tetromino other = game.heldPiece().getShape() == Tetrominoes.NoShape ? game.nextPiece() : game.heldPiece();
+            if (other.getShape() != Tetrominoes.NoShape) {
+                // Where TetrisEngine.spawn puts it
+                int x = engine.width() / 2 + 1;
+                int y = engine.height() - 1 + other.minY();
+                if (engine.fits(other, x, y)) {
+                    search(engine, other, x, y, true);
+                }
+            }
+        }
+        return bestPlacement;
+    }
+
+    /**
+     * Scores every rotation reachable by turning clockwise from ({@code x},
+     * {@code y}), shifted to every column reachable from there.
+     */
+    private void search(TetrisEngine engine, Tetromino piece, int x, int y, boolean hold) {
+        Tetromino rotated = piece;
+        for (int turn = 0; turn < 4; turn++) {
+            if (turn > 0) {
+                Tetromino next = rotated.rotateRight();
+                if (next == piece || !engine.fits(next, x, y)) {
+                    break;
+                }
+                rotated = next;
+            }
+            evaluate(engine, rotated, x, y, hold);
+            for (int left = x - 1; engine.fits(rotated, left, y); left--) {
+                evaluate(engine, rotated, left, y, hold);
+            }
+            for (int right = x + 1; engine.fits(rotated, right, y); right++) {
+                evaluate(engine, rotated, right, y, hold);
+            }
+        }
+    }
+
+    private void evaluate(TetrisEngine engine, Tetromino piece, int x, int y, boolean hold) {
+        evaluations++;
+        int landing = engine.landingY(piece, x, y);
+        int[] pieceRows = piece.rowMasks();
+        int left = x + piece.minX();
+        int top = landing - piece.minY();
+
+        int lines = 0;
+        int cleared = 0;
+        for (int k = 0; k < pieceRows.length; k++) {
+            rows[top - k] |= pieceRows[k] << left;
+            if (rows[top - k] == fullRow) {
+                lines++;
+                cleared |= 1 << k;
+            }
+        }
+
+        // Walks the stack top-down as if the completed rows were already removed
+        int width = heights.length;
+        for (int i = 0; i < width; i++) {
+            heights[i] = 0;
+        }
+        int covered = 0;
+        int holes = 0;
+        int below = lines;
+        for (int row = Math.max(stackTop, top + 1) - 1; row >= 0; row--) {
+            int k = top - row;
+            if (k >= 0 && k < pieceRows.length && (cleared & (1 << k)) != 0) {
+                below--;
+                continue;
+            }
+            int bits = rows[row];
+            holes += Integer.bitCount(~bits & covered);
+            for (int fresh = bits & ~covered; fresh != 0; fresh &= fresh - 1) {
+                heights[Integer.numberOfTrailingZeros(fresh)] = row - below + 1;
+            }
+            covered |= bits;
+        }
+        for (int k = 0; k < pieceRows.length; k++) {
+            rows[top - k] &= ~(pieceRows[k] << left);
+        }
+
+        double score = score(lines, holes);
+        if (score > bestScore) {
+            bestScore = score;
+            bestPlacement = MovePolicy.placement(piece.getRotation(), x, hold);
+        }
+    }
+
+    /**
+     * Score of the {@code height} rows of a board starting at {@code rows[offset]},
+     * whose completed rows are already removed, leaving out the lines term.
+     */
+    double boardScore(int[] rows, int offset, int height, int width) {
+        if (heights.length != width) {
+            heights = new int[width];
+        }
+        for (int i = 0; i < width; i++) {
+            heights[i] = 0;
+        }
+        int covered = 0;
+        int holes = 0;
+        for (int row = height - 1; row >= 0; row--) {
+            int bits = rows[offset + row];
+            holes += Integer.bitCount(~bits & covered);
+            for (int fresh = bits & ~covered; fresh != 0; fresh &= fresh - 1) {
+                heights[Integer.numberOfTrailingZeros(fresh)] = row + 1;
+            }
+            covered |= bits;
+        }
+        return score(0, holes);
+    }
+
+    /** Weighted sum of the features, given the column heights in {@code heights}. */
+    private double score(int lines, int holes) {
+        int aggregateHeight = 0;
+        int bumpiness = 0;
+        int wells = 0;
+        int last = heights.length - 1;
+        for (int i = 0; i <= last; i++) {
+            aggregateHeight += heights[i];
+            if (i > 0) {
+                bumpiness += Math.abs(heights[i] - heights[i - 1]);
+            }
+            // The walls count as infinitely high neighbours
+            int left = i == 0 ? Integer.MAX_VALUE : heights[i - 1];
+            int right = i == last ? Integer.MAX_VALUE : heights[i + 1];
+            int depth = Math.min(left, right) - heights[i];
+            if (depth > 0) {
+                wells += depth;
+            }
+        }
+        return weights[AGGREGATE_HEIGHT] * aggregateHeight + weights[LINES] * lines
+                + weights[HOLES] * holes + weights[BUMPINESS] * bumpiness + weights[WELLS] * wells;
+    }
+
+    /** Weight of {@code feature}. */
+    double weight(int feature) {
+        return weights[feature];
+    }
+
+    /**
+     * Copies the locked rows of {@code engine} into the scratch rows, up to
+     * the top of its stack or of the one loaded before, whichever is higher;
+     * the rows above both are empty in the engine and already cleared here.
+     */
+    private void load(TetrisEngine engine) {
+        if (engine.width() > MAX_WIDTH) {
+            throw new IllegalArgumentException("Board too wide for the policy: " + engine.width());
+        }
+        if (rows.length != engine.height() || heights.length != engine.width()) {
+            rows = new int[engine.height()];
+            heights = new int[engine.width()];
+            stackTop = 0;
+        }
+        fullRow = (1 << engine.width()) - 1;
+        int loaded = stackTop;
+        stackTop = 0;
+        for (int x = 0; x < heights.length; x++) {
+            stackTop = Math.max(stackTop, engine.columnHeight(x));
+        }
+        for (int y = 0, end = Math.max(stackTop, loaded); y < end; y++) {
+            rows[y] = engine.row(y);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package tetris;
+
+import tetris.Controls.Action;
+
+/**
+ * Turns key events into game moves on the game loop thread.
+ *
+ * Key handlers only {@link #offer} events into an {@link InputQueue}; every
+ * step {@link #update} drains it and applies the presses, then repeats the
+ * held direction and soft drop on {@link Controls} timing. Repeat timing
+ * therefore follows the fixed step instead of the OS key repeat, whose
+ * presses are ignored while a key is already held.
+ *
+ * For every press that changed the game, the time from the key event to the
+ * next frame shown is recorded; the mean and worst latency over the last
+ * second are published like the loop's tick jitter.
+ */
+final class InputController {
+    /** Told about every move that changed the game, for recording. */
+    interface MoveListener {
+        void moved(Action move);
+    }
+
+    private static final Action[] ACTIONS = Action.values();
+    /** A release and press closer than this are one X11 auto-repeat, not a real release. */
+    private static final long REPEAT_PAIR_NANOS = 1_000_000L;
+    private static final long SECOND = 1_000_000_000L;
+
+    private final Controls controls;
+    private final InputQueue queue = new InputQueue(256);
+    private MoveListener moveListener;
+
+    private int held = 0;
+    /** Direction being auto-shifted: -1 left, 1 right, 0 none. */
+    private int shiftDirection = 0;
+    private int shiftTicks = 0;
+    private int softDropTicks = 0;
+
+    private boolean latencyPending = false;
+    private long pendingSince = 0;
+    private long latencySum = 0;
+    private long latencyMax = 0;
+    private int latencyCount = 0;
+    private long windowEnd;
+    private volatile long meanLatencyNanos = 0;
+    private volatile long maxLatencyNanos = 0;
+
+    InputController(Controls controls) {
+        this.controls = controls;
+        this.windowEnd = System.nanoTime() + SECOND;
+    }
+
+    Controls controls() {
+        return controls;
+    }
+
+    void setMoveListener(MoveListener moveListener) {
+        this.moveListener = moveListener;
+    }
+
+    static int bit(Action action) {
+        return 1 << action.ordinal();
+    }
+
+    /** Queues a key event; called from the EDT. Returns false if the queue was full. */
+    boolean offer(Action action, boolean pressed, long nanoTime) {
+        return queue.offer(action.ordinal() << 1 | (pressed ? 1 : 0), nanoTime);
+    }
+
+    /**
+     * Runs one step of input. Moves are only applied to {@code game} while
+     * {@code playing}; held keys are tracked either way. Returns the actions
+     * pressed during this step as a bit set, for the ones the caller handles.
+     */
+    int update(TetrisGame game, boolean playing) {
+        if (playing) {
+            autoRepeat(game);
+        }
+        int pressed = 0;
+        while (!queue.isEmpty()) {
+            int event = queue.event(0);
+            long time = queue.time(0);
+            Action action = ACTIONS[event >>> 1];
+            if ((event & 1) == 0) {
+                if (queue.available() > 1 && queue.event(1) == (event | 1)
+                        && queue.time(1) - time < REPEAT_PAIR_NANOS) {
+                    queue.remove(2);
+                    continue;
+                }
+                released(action);
+            } else if ((held & bit(action)) == 0) {
+                held |= bit(action);
+                pressed |= bit(action);
+                if (playing && press(game, action)) {
+                    moved(action);
+                    inputApplied(time);
+                }
+            }
+            queue.remove(1);
+        }
+        return pressed;
+    }
+
+    boolean isHeld(Action action) {
+        return (held & bit(action)) != 0;
+    }
+
+    /** Records that a frame showing every input applied so far is on screen. */
+    void frameShown(long nanoTime) {
+        if (latencyPending) {
+            long latency = nanoTime - pendingSince;
+            latencySum += latency;
+            latencyMax = Math.max(latencyMax, latency);
+            latencyCount++;
+            latencyPending = false;
+        }
+        if (nanoTime - windowEnd >= 0) {
+            meanLatencyNanos = latencyCount == 0 ? 0 : latencySum / latencyCount;
+            maxLatencyNanos = latencyMax;
+            latencySum = 0;
+            latencyMax = 0;
+            latencyCount = 0;
+            windowEnd = nanoTime + SECOND;
+        }
+    }
+
+    /** Mean time from a key press to the frame showing it, over the last second. */
+    long meanLatencyNanos() {
+        return meanLatencyNanos;
+    }
+
+    long maxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    private boolean press(TetrisGame game, Action action) {
+        switch (action) {
+            case MOVE_LEFT:
+                shiftDirection = -1;
+                shiftTicks = 0;
+                return game.moveLeft();
+            case MOVE_RIGHT:
+                shiftDirection = 1;
+                shiftTicks = 0;
+                return game.moveRight();
+            case SOFT_DROP:
+                softDropTicks = 0;
+                return softDrop(game);
+            case HARD_DROP:
+                if (!game.isPieceActive()) {
+                    return false;
+                }
+                game.dropDown();
+                return true;
+            case ROTATE_RIGHT:
+                return game.rotateRight();
+            case ROTATE_LEFT:
+                return game.rotateLeft();
+            case HOLD:
+                if (!game.canHold() || !game.isPieceActive()) {
+                    return false;
+                }
+                game.hold();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void released(Action action) {
+        held &= ~bit(action);
+        if (action == Action.MOVE_LEFT && shiftDirection < 0) {
+            shiftDirection = isHeld(Action.MOVE_RIGHT) ? 1 : 0;
+            shiftTicks = 0;
+        } else if (action == Action.MOVE_RIGHT && shiftDirection > 0) {
+            shiftDirection = isHeld(Action.MOVE_LEFT) ? -1 : 0;
+            shiftTicks = 0;
+        }
+    }
+
+    private void autoRepeat(TetrisGame game) {
+        if (shiftDirection != 0) {
+            shiftTicks++;
+            int das = controls.das();
+            if (shiftTicks >= das) {
+                int arr = controls.arr();
+                if (arr == 0) {
+                    while (shift(game)) {
+                        // Slide to the wall
+                    }
+                } else if ((shiftTicks - das) % arr == 0) {
+                    shift(game);
+                }
+            }
+        }
+        if (isHeld(Action.SOFT_DROP) && ++softDropTicks >= controls.softDrop()) {
+            softDropTicks = 0;
+            if (softDrop(game)) {
+                moved(Action.SOFT_DROP);
+            }
+        }
+    }
+
+    private boolean shift(TetrisGame game) {
+        boolean moved = shiftDirection < 0 ? game.moveLeft() : game.moveRight();
+        if (moved) {
+            moved(shiftDirection < 0 ? Action.MOVE_LEFT : Action.MOVE_RIGHT);
+        }
+        return moved;
+    }
+
+    private static boolean softDrop(TetrisGame game) {
+        if (!game.isPieceActive()) {
+            return false;
+        }
+        game.oneLineDown();
+        return true;
+    }
+
+    private void moved(Action move) {
+        if (moveListener != null) {
+            moveListener.moved(move);
+        }
+    }
+
+    private void inputApplied(long time) {
+        if (!latencyPending) {
+            latencyPending = true;
+            pendingSince = time;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package tetris;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single-producer single-consumer ring buffer of timestamped input events.
+ *
+ * The EDT offers key events and the game loop drains them, without locks:
+ * each side only writes its own index, and an index is published with an
+ * ordered store after the slot it covers has been written.
+ */
+final class InputQueue {
+    private final int[] events;
+    private final long[] times;
+    private final int mask;
+    /** Next slot to read, written by the consumer. */
+    private final AtomicInteger head = new AtomicInteger();
+    /** Next slot to write, written by the producer. */
+    private final AtomicInteger tail = new AtomicInteger();
+
+    InputQueue(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.events = new int[capacity];
+        this.times = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /** Adds an event; returns false and drops it when the queue is full. */
+    boolean offer(int event, long time) {
+        int t = tail.get();
+        if (t - head.get() == events.length) {
+            return false;
+        }
+        events[t & mask] = event;
+        times[t & mask] = time;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /** Number of events after the oldest one that are ready to read. */
+    int available() {
+        return tail.get() - head.get();
+    }
+
+    /** The event {@code index} places after the oldest one; only valid below {@link #available()}. */
+    int event(int index) {
+        return events[(head.get() + index) & mask];
+    }
+
+    long time(int index) {
+        return times[(head.get() + index) & mask];
+    }
+
+    /** Drops the oldest {@code count} events. */
+    void remove(int count) {
+        head.lazySet(head.get() + count);
+    }
+}
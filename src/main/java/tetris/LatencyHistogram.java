@@ -0,0 +1,100 @@
+package tetris;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations in nanoseconds with log-linear buckets: eight
+ * buckets per power of two, so any percentile is within 12.5% of the true
+ * value. Recording is a single atomic increment and never allocates.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    void record(long nanos) {
+        counts.incrementAndGet(bucket(Math.max(0, nanos)));
+    }
+
+    /** Adds the counts of this histogram to {@code into}, for a snapshot or a merge. */
+    void addTo(long[] into) {
+        for (int i = 0; i < BUCKETS; i++) {
+            into[i] += counts.get(i);
+        }
+    }
+
+    /** Counts array sized for {@link #addTo}. */
+    static long[] newCounts() {
+        return new long[BUCKETS];
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+    }
+
+    long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    long percentile(double percent) {
+        long[] snapshot = newCounts();
+        addTo(snapshot);
+        return percentile(snapshot, percent);
+    }
+
+    /** Upper bound of the bucket holding the {@code percent} percentile of {@code counts}, 0 if empty. */
+    static long percentile(long[] counts, double percent) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percent / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    /** Largest value recorded, to bucket precision. */
+    static long max(long[] counts) {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                return upperBound(i);
+            }
+        }
+        return 0;
+    }
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+}
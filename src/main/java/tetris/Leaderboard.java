@@ -0,0 +1,314 @@
+package tetris;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Finished games in an append-only log, with the best ones kept in memory.
+ *
+ * The log starts with an 8 byte header (magic "TSCR", version) followed by
+ * fixed 32 byte records: score, lines, level, duration, timestamp and a
+ * CRC32 of the preceding 28 bytes. A record torn by a crash fails its
+ * checksum; loading stops there and the next write cuts it off. A log
+ * shorter than its header, left by a crash during the first write, is
+ * treated as empty and rewritten; only a full header of another format
+ * keeps the file from being written to.
+ *
+ * All disk access happens on one background thread. It first loads the top
+ * {@code capacity} results, then writes submitted results in batches, made
+ * durable according to the {@link Durability} policy. {@link #submit} only
+ * queues, so the game never waits for the disk.
+ */
+final class Leaderboard {
+    static final String FILE_NAME = "tetris_scores.log";
+    /** Single-integer high score file of earlier versions, imported once. */
+    static final String LEGACY_FILE_NAME = "tetris_highscore.txt";
+
+    static final int MAGIC = 0x54534352;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 32;
+
+    private static final int MAX_BATCH = 64;
+    private static final GameResult CLOSE = new GameResult(0, 0, 0, 0, 0);
+
+    enum Durability {
+        /** Appends each batch and forces it to disk before the next one. */
+        FSYNC,
+        /** Writes each batch into a copy of the log, forces it and renames it over the old one. */
+        ATOMIC_RENAME,
+        /** Appends each batch and leaves flushing to the OS. */
+        NONE
+    }
+
+    private final Path log;
+    private final Path legacy;
+    private final Durability durability;
+    private final GameResult[] top;
+    private int topSize = 0;
+    private final LinkedBlockingQueue<GameResult> pending = new LinkedBlockingQueue<>();
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    private final Thread writer;
+    private final LatencyHistogram writeTime = new LatencyHistogram();
+
+    /** Length of the valid part of the log, written only by the writer thread. */
+    private long validLength = 0;
+    /** Set when the log could not be read, so that it is never overwritten. */
+    private boolean readOnly = false;
+
+    Leaderboard(Path log, Path legacy, int capacity, Durability durability) {
+        this.log = log;
+        this.legacy = legacy;
+        this.durability = durability;
+        this.top = new GameResult[capacity];
+        this.writer = new Thread(this::run, "leaderboard-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /** Completes once the results already on disk are in the index. */
+    CompletableFuture<Void> loaded() {
+        return loaded;
+    }
+
+    /** Queues {@code result} to be written and ranks it right away. */
+    void submit(GameResult result) {
+        rank(result);
+        pending.add(result);
+    }
+
+    /** Best score so far, 0 when there is none. */
+    synchronized int bestScore() {
+        return topSize == 0 ? 0 : top[0].score;
+    }
+
+    /** The best results so far, best first. */
+    synchronized List<GameResult> top() {
+        return new ArrayList<>(Arrays.asList(top).subList(0, topSize));
+    }
+
+    /** Time taken by each batch written to the log, including forcing it to disk. */
+    LatencyHistogram writeTime() {
+        return writeTime;
+    }
+
+    /** Writes the queued results and stops the writer, waiting at most {@code timeout}. */
+    boolean close(long timeout, TimeUnit unit) throws InterruptedException {
+        pending.add(CLOSE);
+        writer.join(unit.toMillis(timeout));
+        return !writer.isAlive();
+    }
+
+    private synchronized void rank(GameResult result) {
+        int i = topSize;
+        if (i == top.length) {
+            if (!result.ranksAbove(top[i - 1])) {
+                return;
+            }
+            i--;
+        } else {
+            topSize++;
+        }
+        while (i > 0 && result.ranksAbove(top[i - 1])) {
+            top[i] = top[i - 1];
+            i--;
+        }
+        top[i] = result;
+    }
+
+    private void run() {
+        try {
+            load();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        loaded.complete(null);
+
+        List<GameResult> batch = new ArrayList<>(MAX_BATCH);
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_BATCH * RECORD_SIZE);
+        boolean closing = false;
+        while (!closing) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.drainTo(batch, MAX_BATCH - 1);
+            buffer.clear();
+            for (GameResult result : batch) {
+                if (result == CLOSE) {
+                    closing = true;
+                } else {
+                    encode(buffer, result);
+                }
+            }
+            buffer.flip();
+            batch.clear();
+            if (buffer.hasRemaining() && !readOnly) {
+                try {
+                    GameEvents.ScoreWrite event = new GameEvents.ScoreWrite();
+                    event.begin();
+                    int bytes = buffer.remaining();
+                    long start = System.nanoTime();
+                    write(buffer);
+                    writeTime.record(System.nanoTime() - start);
+                    if (event.shouldCommit()) {
+                        event.results = bytes / RECORD_SIZE;
+                        event.bytes = bytes;
+                        event.durability = durability.name();
+                        event.commit();
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(log)) {
+            importLegacy();
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE) {
+                // validLength stays 0, so the first write starts the log over
+                importLegacy();
+                return;
+            }
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                readOnly = true;
+                throw new IOException(log + " is not a score log");
+            }
+            validLength = HEADER_SIZE;
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * RECORD_SIZE);
+            while (readFully(channel, buffer) > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_SIZE) {
+                    GameResult result = decode(buffer);
+                    if (result == null) {
+                        return;
+                    }
+                    rank(result);
+                    validLength += RECORD_SIZE;
+                }
+                buffer.compact();
+            }
+        }
+    }
+
+    /** Imports the single high score of {@link #LEGACY_FILE_NAME} and sets the old file aside. */
+    private void importLegacy() throws IOException {
+        if (legacy == null || !Files.exists(legacy)) {
+            return;
+        }
+        String line;
+        try (BufferedReader reader = Files.newBufferedReader(legacy)) {
+            line = reader.readLine();
+        }
+        int score;
+        try {
+            score = line == null ? 0 : Integer.parseInt(line.trim());
+        } catch (NumberFormatException e) {
+            return;
+        }
+        GameResult result = new GameResult(score, 0, 0, 0, Files.getLastModifiedTime(legacy).toMillis());
+        rank(result);
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        encode(buffer, result);
+        buffer.flip();
+        write(buffer);
+        Files.move(legacy, legacy.resolveSibling(legacy.getFileName() + ".migrated"),
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void write(ByteBuffer records) throws IOException {
+        if (durability == Durability.ATOMIC_RENAME) {
+            Path temp = log.resolveSibling(log.getFileName() + ".tmp");
+            if (validLength > 0) {
+                Files.copy(log, temp, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                Files.deleteIfExists(temp);
+            }
+            append(temp, records, true);
+            Files.move(temp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            append(log, records, durability == Durability.FSYNC);
+        }
+    }
+
+    private void append(Path path, ByteBuffer records, boolean force) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (validLength == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                channel.truncate(0);
+                writeFully(channel, header, 0);
+                validLength = HEADER_SIZE;
+            }
+            // Cuts off a record torn by an earlier crash
+            channel.truncate(validLength);
+            int length = records.remaining();
+            writeFully(channel, records, validLength);
+            if (force) {
+                channel.force(false);
+            }
+            validLength += length;
+        }
+    }
+
+    private static void encode(ByteBuffer out, GameResult result) {
+        int start = out.position();
+        out.putInt(result.score);
+        out.putInt(result.lines);
+        out.putInt(result.level);
+        out.putLong(result.durationMillis);
+        out.putLong(result.timestamp);
+        CRC32 crc = new CRC32();
+        crc.update(out.array(), out.arrayOffset() + start, RECORD_SIZE - 4);
+        out.putInt((int) crc.getValue());
+    }
+
+    /** Reads one record, or returns null if it fails its checksum. */
+    private static GameResult decode(ByteBuffer in) {
+        int start = in.position();
+        CRC32 crc = new CRC32();
+        crc.update(in.array(), in.arrayOffset() + start, RECORD_SIZE - 4);
+        GameResult result = new GameResult(in.getInt(), in.getInt(), in.getInt(), in.getLong(), in.getLong());
+        return in.getInt() == (int) crc.getValue() ? result : null;
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer);
+            if (n < 0) {
+                break;
+            }
+            total += n;
+        }
+        return total;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package tetris;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a {@link GameServer} with many sessions playing random moves.
+ *
+ * Each connection creates its share of the sessions, then sends every
+ * session about {@code inputsPerSecond} random moves and one state request a
+ * second, and restarts the sessions whose game is over. Replies come back in
+ * order, so a reader thread per connection matches each one to the time its
+ * request was sent. After a warmup the server's latency histogram is reset,
+ * and at the end the server's tick latency and the round trip times seen by
+ * the clients are printed.
+ *
+ * Usage: {@code LoadGenerator [host] [port] [sessions] [seconds] [connections] [inputsPerSecond]}
+ */
+class LoadGenerator {
+    static final int WARMUP_SECONDS = 5;
+    private static final int SETUP_BATCH = 1000;
+    private static final Controls.Action[] MOVES = {
+        Controls.Action.MOVE_LEFT, Controls.Action.MOVE_RIGHT, Controls.Action.SOFT_DROP,
+        Controls.Action.HARD_DROP, Controls.Action.ROTATE_RIGHT, Controls.Action.ROTATE_LEFT, Controls.Action.HOLD
+    };
+
+    private final LatencyHistogram roundTrips = new LatencyHistogram();
+    private final AtomicLong errors = new AtomicLong();
+    private volatile boolean running = true;
+
+    /** One socket, the sessions it created and the send times of its unanswered requests. */
+    private final class Client implements Runnable {
+        final Socket socket;
+        final OutputStream out;
+        final BufferedReader in;
+        final int[] sessions;
+        final ConcurrentLinkedQueue<Long> sent = new ConcurrentLinkedQueue<>();
+        final ConcurrentLinkedQueue<String> restarts = new ConcurrentLinkedQueue<>();
+        final StringBuilder line = new StringBuilder();
+
+        Client(String host, int port, int count) throws IOException {
+            socket = new Socket(host, port);
+            socket.setTcpNoDelay(true);
+            out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            sessions = new int[count];
+            for (int first = 0; first < count; first += SETUP_BATCH) {
+                int last = Math.min(count, first + SETUP_BATCH);
+                for (int i = first; i < last; i++) {
+                    out.write("NEW\n".getBytes(StandardCharsets.US_ASCII));
+                }
+                out.flush();
+                for (int i = first; i < last; i++) {
+                    String reply = in.readLine();
+                    if (reply == null || !reply.startsWith("OK ")) {
+                        throw new IOException("NEW failed: " + reply);
+                    }
+                    sessions[i] = Integer.parseInt(reply.substring(3));
+                }
+            }
+        }
+
+        void send(CharSequence request) throws IOException {
+            // Timed before writing, since a full buffer may send it straight away
+            sent.add(System.nanoTime());
+            for (int i = 0; i < request.length(); i++) {
+                out.write(request.charAt(i));
+            }
+        }
+
+        /** Sends one frame of requests: moves at the configured rate, a slice of the state polls, pending restarts. */
+        void frame(SplittableRandom random, double moveChance, int frame) throws IOException {
+            String id;
+            while ((id = restarts.poll()) != null) {
+                line.setLength(0);
+                send(line.append("RESTART ").append(id).append('\n'));
+            }
+            for (int i = 0; i < sessions.length; i++) {
+                if (random.nextDouble() < moveChance) {
+                    line.setLength(0);
+                    send(line.append("KEY ").append(sessions[i]).append(' ')
+                            .append(MOVES[random.nextInt(MOVES.length)]).append('\n'));
+                }
+                if (i % GameLoop.TICKS_PER_SECOND == frame) {
+                    line.setLength(0);
+                    send(line.append("STATE ").append(sessions[i]).append('\n'));
+                }
+            }
+            out.flush();
+        }
+
+        /** Reads the replies in order and times each against its request. */
+        @Override
+        public void run() {
+            try {
+                String reply;
+                while ((reply = in.readLine()) != null) {
+                    Long time = sent.poll();
+                    if (time != null) {
+                        roundTrips.record(System.nanoTime() - time);
+                    }
+                    if (reply.startsWith("ERR")) {
+                        errors.incrementAndGet();
+                    } else if (reply.startsWith("STATE ")) {
+                        // STATE <id> <started> ...
+                        String[] fields = reply.split(" ", 4);
+                        if (fields[2].equals("0")) {
+                            restarts.add(fields[1]);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    void run(String host, int port, int sessions, int seconds, int connections, double inputsPerSecond)
+            throws IOException, InterruptedException {
+        List<Client> clients = new ArrayList<>(connections);
+        long setupStart = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            int count = sessions / connections + (c < sessions % connections ? 1 : 0);
+            clients.add(new Client(host, port, count));
+        }
+        System.out.printf("created %d sessions on %d connections in %d ms%n",
+                sessions, connections, (System.nanoTime() - setupStart) / 1_000_000);
+        for (Client client : clients) {
+            Thread reader = new Thread(client, "load-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        SplittableRandom random = new SplittableRandom();
+        double moveChance = inputsPerSecond / GameLoop.TICKS_PER_SECOND;
+        long start = System.nanoTime();
+        long warmupEnd = start + WARMUP_SECONDS * 1_000_000_000L;
+        long end = warmupEnd + seconds * 1_000_000_000L;
+        boolean warm = false;
+        for (long frame = 0; ; frame++) {
+            long deadline = start + frame * GameLoop.TICK_NANOS;
+            long now = System.nanoTime();
+            if (deadline > now) {
+                Thread.sleep((deadline - now) / 1_000_000, (int) ((deadline - now) % 1_000_000));
+            }
+            if (!warm && System.nanoTime() >= warmupEnd) {
+                warm = true;
+                roundTrips.reset();
+                errors.set(0);
+                System.out.println(command(host, port, "RESET"));
+            }
+            if (System.nanoTime() >= end) {
+                break;
+            }
+            for (Client client : clients) {
+                client.frame(random, moveChance, (int) (frame % GameLoop.TICKS_PER_SECOND));
+            }
+        }
+
+        System.out.println(command(host, port, "STATS"));
+        System.out.printf("round trip p50 %d us, p99 %d us, p99.9 %d us over %d requests, %d errors%n",
+                roundTrips.percentile(50) / 1000, roundTrips.percentile(99) / 1000,
+                roundTrips.percentile(99.9) / 1000, roundTrips.count(), errors.get());
+        running = false;
+        for (Client client : clients) {
+            client.socket.close();
+        }
+    }
+
+    /** Sends one command on a fresh connection and returns the reply. */
+    private static String command(String host, int port, String command) throws IOException {
+        try (Socket socket = new Socket(host, port)) {
+            socket.getOutputStream().write((command + "\n").getBytes(StandardCharsets.US_ASCII));
+            return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))
+                    .readLine();
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : GameServer.DEFAULT_PORT;
+        int sessions = args.length > 2 ? Integer.parseInt(args[2]) : 10_000;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        int connections = args.length > 4 ? Integer.parseInt(args[4]) : 8;
+        double inputsPerSecond = args.length > 5 ? Double.parseDouble(args[5]) : 2;
+
+        new LoadGenerator().run(host, port, sessions, seconds, connections, inputsPerSecond);
+    }
+}
@@ -0,0 +1,79 @@
+package tetris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * One fixed-width column of a {@link ScoreArchive}, stored in its own file
+ * and mapped into memory in segments of {@code 2^SEGMENT_SHIFT} rows. The
+ * file grows a segment at a time as rows are appended.
+ *
+ * Not thread-safe; the archive maps new segments under its lock.
+ */
+final class MappedColumn implements Closeable {
+    static final int SEGMENT_SHIFT = 20;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private final FileChannel channel;
+    private final int width;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[16];
+
+    MappedColumn(Path path, int width) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.width = width;
+    }
+
+    /** Maps the segments holding rows {@code 0..rows-1}. */
+    void ensureCapacity(int rows) throws IOException {
+        if (rows == 0) {
+            return;
+        }
+        int last = (rows - 1) >>> SEGMENT_SHIFT;
+        if (last >= segments.length) {
+            segments = Arrays.copyOf(segments, Math.max(last + 1, segments.length * 2));
+        }
+        for (int i = 0; i <= last; i++) {
+            if (segments[i] == null) {
+                long size = (long) width << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * size, size);
+            }
+        }
+    }
+
+    int getInt(int row) {
+        return segments[row >>> SEGMENT_SHIFT].getInt((row & SEGMENT_MASK) * width);
+    }
+
+    long getLong(int row) {
+        return segments[row >>> SEGMENT_SHIFT].getLong((row & SEGMENT_MASK) * width);
+    }
+
+    void putInt(int row, int value) {
+        segments[row >>> SEGMENT_SHIFT].putInt((row & SEGMENT_MASK) * width, value);
+    }
+
+    void putLong(int row, long value) {
+        segments[row >>> SEGMENT_SHIFT].putLong((row & SEGMENT_MASK) * width, value);
+    }
+
+    /** Writes the mapped rows back to the file. */
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            if (segment != null) {
+                segment.force();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+}
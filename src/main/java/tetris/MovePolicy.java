@@ -0,0 +1,28 @@
+package tetris;
+
+/**
+ * Decides where a headless player puts the current piece.
+ *
+ * A placement is packed into an int so that choosing a move does not allocate;
+ * use {@link #placement} to build one and the static accessors to read it.
+ */
+interface MovePolicy {
+    /** Returns the placement for the current piece of {@code game}. */
+    int choose(TetrisGame game);
+
+    static int placement(int rotation, int x, boolean hold) {
+        return (hold ? 1 << 18 : 0) | ((rotation & 3) << 16) | (x & 0xFFFF);
+    }
+
+    static int rotation(int placement) {
+        return (placement >>> 16) & 3;
+    }
+
+    static int x(int placement) {
+        return (short) placement;
+    }
+
+    static boolean hold(int placement) {
+        return (placement & (1 << 18)) != 0;
+    }
+}
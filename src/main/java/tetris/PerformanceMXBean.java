@@ -0,0 +1,61 @@
+package tetris;
+
+/**
+ * Performance of the running game, published over JMX as
+ * {@value PerformanceMetrics#OBJECT_NAME}.
+ *
+ * Rates and allocation are over the last second; durations are percentiles
+ * in microseconds since the start or the last {@link #reset()}. Public
+ * because JMX only introspects public interfaces.
+ */
+public interface PerformanceMXBean {
+    int getFramesPerSecond();
+
+    int getTicksPerSecond();
+
+    /** Mean bytes allocated by the game loop thread per frame, ticks included; -1 if not measurable. */
+    long getAllocatedBytesPerFrame();
+
+    long getFrameTimeP50Micros();
+
+    long getFrameTimeP99Micros();
+
+    long getFrameTimeMaxMicros();
+
+    long getTickTimeP50Micros();
+
+    long getTickTimeP99Micros();
+
+    long getTickTimeMaxMicros();
+
+    /** How late ticks started against their schedule. */
+    long getTickLatenessP99Micros();
+
+    long getTickLatenessMaxMicros();
+
+    /** Ticks that started more than a whole tick late. */
+    long getLateTicks();
+
+    /** Ticks skipped because the loop was too far behind to catch up. */
+    long getDroppedTicks();
+
+    /** Applying the queued input, moves and rotations included. */
+    long getInputTimeP99Micros();
+
+    /** Steps that removed completed lines. */
+    long getLineClearTimeP99Micros();
+
+    long getLineClearTimeMaxMicros();
+
+    /** Batches written to the score log. */
+    long getScoreWriteP99Micros();
+
+    long getScoreWriteMaxMicros();
+
+    /** Key press to the next frame shown, over the last second. */
+    long getInputLatencyMeanMicros();
+
+    long getInputLatencyMaxMicros();
+
+    void reset();
+}
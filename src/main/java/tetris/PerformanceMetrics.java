@@ -0,0 +1,264 @@
+package tetris;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Timings of the game loop, published as a {@link PerformanceMXBean} and as
+ * the text of the in-game overlay.
+ *
+ * The {@link GameLoop} records every tick and frame into histograms, which
+ * costs a couple of atomic increments and reuses the clock reads the loop
+ * makes anyway. Once a second it calls {@link #roll}, which reads the thread's
+ * allocation counter once and rebuilds the overlay text from the histograms'
+ * change over that second, so nothing per frame allocates.
+ */
+final class PerformanceMetrics implements PerformanceMXBean {
+    static final String OBJECT_NAME = "tetris:type=Performance";
+
+    final LatencyHistogram frameTime = new LatencyHistogram();
+    final LatencyHistogram tickTime = new LatencyHistogram();
+    final LatencyHistogram tickLateness = new LatencyHistogram();
+    final LatencyHistogram inputTime = new LatencyHistogram();
+    final LatencyHistogram lineClearTime = new LatencyHistogram();
+    private final LatencyHistogram scoreWrite;
+    private final InputController input;
+    private final AtomicLong lateTicks = new AtomicLong();
+    private final AtomicLong droppedTicks = new AtomicLong();
+    /** Null when the JVM cannot count allocations per thread. */
+    private final com.sun.management.ThreadMXBean threads;
+
+    // Game loop thread, in roll()
+    private long allocatedBefore = -1;
+    private long[] frameBefore = LatencyHistogram.newCounts();
+    private long[] frameNow = LatencyHistogram.newCounts();
+    private long[] tickBefore = LatencyHistogram.newCounts();
+    private long[] tickNow = LatencyHistogram.newCounts();
+    private long[] latenessBefore = LatencyHistogram.newCounts();
+    private long[] latenessNow = LatencyHistogram.newCounts();
+
+    private volatile int framesPerSecond = 0;
+    private volatile int ticksPerSecond = 0;
+    private volatile long allocatedBytesPerFrame = -1;
+    private volatile String[] overlay = new String[0];
+
+    PerformanceMetrics(InputController input, Leaderboard leaderboard) {
+        this.input = input;
+        this.scoreWrite = leaderboard.writeTime();
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            threads = (com.sun.management.ThreadMXBean) bean;
+            threads.setThreadAllocatedMemoryEnabled(true);
+        } else {
+            threads = null;
+        }
+    }
+
+    /** Publishes these metrics in the platform MBean server. */
+    void register() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    void tickRan(long lateNanos, long nanos) {
+        tickLateness.record(lateNanos);
+        tickTime.record(nanos);
+        if (lateNanos > GameLoop.TICK_NANOS) {
+            lateTicks.incrementAndGet();
+        }
+    }
+
+    void ticksDropped(long ticks) {
+        droppedTicks.addAndGet(ticks);
+    }
+
+    void frameRendered(long nanos) {
+        frameTime.record(nanos);
+    }
+
+    /** Closes a one second window; call on the game loop thread. */
+    void roll(int ticks, int frames) {
+        framesPerSecond = frames;
+        ticksPerSecond = ticks;
+        if (threads != null) {
+            long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+            if (allocatedBefore >= 0 && frames > 0) {
+                allocatedBytesPerFrame = (allocated - allocatedBefore) / frames;
+            }
+            allocatedBefore = allocated;
+        }
+
+        window(frameTime, frameNow, frameBefore);
+        window(tickTime, tickNow, tickBefore);
+        window(tickLateness, latenessNow, latenessBefore);
+        long allocation = allocatedBytesPerFrame;
+        overlay = new String[] {
+            String.format("%d fps  %d tps", frames, ticks),
+            String.format("frame  p50 %.2f  p99 %.2f  max %.2f ms", millis(frameNow, 50), millis(frameNow, 99),
+                    LatencyHistogram.max(frameNow) / 1e6),
+            String.format("tick   p50 %.3f  p99 %.3f ms", millis(tickNow, 50), millis(tickNow, 99)),
+            String.format("late   p99 %.2f  max %.2f ms", millis(latenessNow, 99),
+                    LatencyHistogram.max(latenessNow) / 1e6),
+            String.format("ticks  %d late  %d dropped", lateTicks.get(), droppedTicks.get()),
+            String.format("input  %.1f / %.1f ms to screen", input.meanLatencyNanos() / 1e6,
+                    input.maxLatencyNanos() / 1e6),
+            allocation < 0 ? "alloc  n/a" : String.format("alloc  %d B/frame", allocation)
+        };
+        long[] swap = frameBefore;
+        frameBefore = frameNow;
+        frameNow = swap;
+        swap = tickBefore;
+        tickBefore = tickNow;
+        tickNow = swap;
+        swap = latenessBefore;
+        latenessBefore = latenessNow;
+        latenessNow = swap;
+    }
+
+    /** Lines of the overlay as of the last {@link #roll}. */
+    String[] overlay() {
+        return overlay;
+    }
+
+    /** Leaves the counts of {@code histogram} since {@code before} in {@code now}, and its totals in {@code before}. */
+    private static void window(LatencyHistogram histogram, long[] now, long[] before) {
+        Arrays.fill(now, 0);
+        histogram.addTo(now);
+        for (int i = 0; i < now.length; i++) {
+            long total = now[i];
+            // A reset in between leaves totals below the last ones
+            now[i] = Math.max(0, total - before[i]);
+            before[i] = total;
+        }
+    }
+
+    private static double millis(long[] counts, double percent) {
+        return LatencyHistogram.percentile(counts, percent) / 1e6;
+    }
+
+    private static long micros(LatencyHistogram histogram, double percent) {
+        return histogram.percentile(percent) / 1000;
+    }
+
+    private static long maxMicros(LatencyHistogram histogram) {
+        long[] counts = LatencyHistogram.newCounts();
+        histogram.addTo(counts);
+        return LatencyHistogram.max(counts) / 1000;
+    }
+
+    @Override
+    public int getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    @Override
+    public int getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    @Override
+    public long getAllocatedBytesPerFrame() {
+        return allocatedBytesPerFrame;
+    }
+
+    @Override
+    public long getFrameTimeP50Micros() {
+        return micros(frameTime, 50);
+    }
+
+    @Override
+    public long getFrameTimeP99Micros() {
+        return micros(frameTime, 99);
+    }
+
+    @Override
+    public long getFrameTimeMaxMicros() {
+        return maxMicros(frameTime);
+    }
+
+    @Override
+    public long getTickTimeP50Micros() {
+        return micros(tickTime, 50);
+    }
+
+    @Override
+    public long getTickTimeP99Micros() {
+        return micros(tickTime, 99);
+    }
+
+    @Override
+    public long getTickTimeMaxMicros() {
+        return maxMicros(tickTime);
+    }
+
+    @Override
+    public long getTickLatenessP99Micros() {
+        return micros(tickLateness, 99);
+    }
+
+    @Override
+    public long getTickLatenessMaxMicros() {
+        return maxMicros(tickLateness);
+    }
+
+    @Override
+    public long getLateTicks() {
+        return lateTicks.get();
+    }
+
+    @Override
+    public long getDroppedTicks() {
+        return droppedTicks.get();
+    }
+
+    @Override
+    public long getInputTimeP99Micros() {
+        return micros(inputTime, 99);
+    }
+
+    @Override
+    public long getLineClearTimeP99Micros() {
+        return micros(lineClearTime, 99);
+    }
+
+    @Override
+    public long getLineClearTimeMaxMicros() {
+        return maxMicros(lineClearTime);
+    }
+
+    @Override
+    public long getScoreWriteP99Micros() {
+        return micros(scoreWrite, 99);
+    }
+
+    @Override
+    public long getScoreWriteMaxMicros() {
+        return maxMicros(scoreWrite);
+    }
+
+    @Override
+    public long getInputLatencyMeanMicros() {
+        return input.meanLatencyNanos() / 1000;
+    }
+
+    @Override
+    public long getInputLatencyMaxMicros() {
+        return input.maxLatencyNanos() / 1000;
+    }
+
+    @Override
+    public void reset() {
+        frameTime.reset();
+        tickTime.reset();
+        tickLateness.reset();
+        inputTime.reset();
+        lineClearTime.reset();
+        scoreWrite.reset();
+        lateTicks.set(0);
+        droppedTicks.set(0);
+    }
+}
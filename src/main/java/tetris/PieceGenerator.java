@@ -0,0 +1,49 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Source of the shapes dealt to one game.
+ *
+ * Generators are seeded and owned by a single game, so games on different
+ * threads never share random state and any game can be replayed from its seed.
+ * Their state can also be saved and restored as it is, so a saved game goes
+ * on dealing the same pieces without drawing the ones before again.
+ */
+interface PieceGenerator {
+    /** Restarts the sequence from {@code seed}. */
+    void reset(long seed);
+
+    Tetrominoes next();
+
+    Kind kind();
+
+    /** Writes the state of the sequence, {@link Kind#stateBytes} bytes. */
+    void saveState(ByteBuffer out);
+
+    /**
+     * Continues the sequence from a state written by {@link #saveState}.
+     *
+     * @throws IllegalArgumentException if it is not a state of this kind of generator
+     */
+    void restoreState(ByteBuffer in);
+
+    enum Kind {
+        /** Every shape is equally likely on every draw. */
+        UNIFORM(8),
+        /** All 7 shapes are dealt in random order before any repeats. */
+        BAG(16);
+
+        final int stateBytes;
+
+        Kind(int stateBytes) {
+            this.stateBytes = stateBytes;
+        }
+
+        PieceGenerator create(long seed) {
+            PieceGenerator generator = this == BAG ? new BagGenerator() : new UniformGenerator();
+            generator.reset(seed);
+            return generator;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Fixed-size preview of the upcoming pieces, backed by a ring buffer that is
+ * refilled from a {@link PieceGenerator} as pieces are taken.
+ */
+final class PieceQueue {
+    private static final Tetromino[] NONE = new Tetromino[0];
+
+    private final PieceGenerator generator;
+    private final Tetromino[] pieces;
+    private int head = 0;
+    private int taken = 0;
+    /** Pieces dealt ahead of the preview, left over from restoring a longer one; dealt before the generator's. */
+    private Tetromino[] pending = NONE;
+    private int pendingIndex = 0;
+
+    PieceQueue(PieceGenerator generator, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Preview size must be at least 1: " + size);
+        }
+        this.generator = generator;
+        this.pieces = new Tetromino[size];
+    }
+
+    /** Reseeds the generator and refills the whole preview. */
+    void reset(long seed) {
+        generator.reset(seed);
+        head = 0;
+        taken = 0;
+        pending = NONE;
+        pendingIndex = 0;
+        for (int i = 0; i < pieces.length; i++) {
+            pieces[i] = Tetromino.of(generator.next());
+        }
+    }
+
+    /**
+     * Brings the queue back to {@code taken} pieces after a reset, with the
+     * generator in a state saved by {@link #saveState} and {@code upcoming}
+     * the pieces it had dealt ahead, next first. The preview is filled from
+     * them, then from the generator; any it has no room for are dealt first.
+     *
+     * @throws IllegalArgumentException if the state is not one of this kind of generator
+     */
+    void restore(ByteBuffer state, Tetromino[] upcoming, int taken) {
+        generator.restoreState(state);
+        head = 0;
+        this.taken = taken;
+        int shown = Math.min(pieces.length, upcoming.length);
+        System.arraycopy(upcoming, 0, pieces, 0, shown);
+        for (int i = shown; i < pieces.length; i++) {
+            pieces[i] = Tetromino.of(generator.next());
+        }
+        pending = shown < upcoming.length ? Arrays.copyOfRange(upcoming, shown, upcoming.length) : NONE;
+        pendingIndex = 0;
+    }
+
+    void saveState(ByteBuffer out) {
+        generator.saveState(out);
+    }
+
+    /** Pieces the generator has dealt that are not taken yet: the preview, then any left from a restore. */
+    int upcomingCount() {
+        return pieces.length + pending.length - pendingIndex;
+    }
+
+    /** The piece {@code index} places ahead, for {@code index} below {@link #upcomingCount()}. */
+    Tetromino upcoming(int index) {
+        return index < pieces.length ? peek(index) : pending[pendingIndex + index - pieces.length];
+    }
+
+    PieceGenerator.Kind kind() {
+        return generator.kind();
+    }
+
+    int size() {
+        return pieces.length;
+    }
+
+    /** The piece {@code index} places ahead, 0 being the next one. */
+    Tetromino peek(int index) {
+        return pieces[(head + index) % pieces.length];
+    }
+
+    /** Pieces taken since the last reset. */
+    int taken() {
+        return taken;
+    }
+
+    /** Takes the next piece and appends a fresh one to the end of the preview. */
+    Tetromino poll() {
+        Tetromino piece = pieces[head];
+        pieces[head] = pendingIndex < pending.length ? pending[pendingIndex++] : Tetromino.of(generator.next());
+        head = (head + 1) % pieces.length;
+        taken++;
+        return piece;
+    }
+}
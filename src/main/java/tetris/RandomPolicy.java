@@ -0,0 +1,19 @@
+package tetris;
+
+import java.util.SplittableRandom;
+
+/**
+ * Drops every piece in a random rotation and column. The choices are seeded
+ * from the game's seed, so a game is reproducible from that seed alone.
+ */
+class RandomPolicy implements MovePolicy {
+    private SplittableRandom random;
+
+    @Override
+    public int choose(TetrisGame game) {
+        if (random == null || game.piecesPlaced() == 0) {
+            random = new SplittableRandom(~game.seed());
+        }
+        return MovePolicy.placement(random.nextInt(4), random.nextInt(game.engine().width()), false);
+    }
+}
@@ -0,0 +1,153 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A recorded {@link EnhancedTetris} game: the seed plus every move, stamped
+ * with the {@link TetrisGame#step()} it was made at.
+ *
+ * File layout, multi-byte integers big-endian:
+ * <pre>
+ * int    magic "TRPL"
+ * byte   version
+ * byte   piece generator (PieceGenerator.Kind ordinal)
+ * varint board width, varint board height
+ * long   seed
+ * varint (steps since previous move &lt;&lt; 3 | move), repeated
+ * varint (steps since previous move &lt;&lt; 3 | END), varint score, lines, level
+ * </pre>
+ * A move is the ordinal of a {@link Controls.Action} that changed the game.
+ * Varints hold 7 bits per byte, low bits first. A replay without the END
+ * record is from a game that was interrupted and cannot be verified.
+ */
+final class Replay {
+    static final int MAGIC = 0x5452504C;
+    static final int VERSION = 1;
+    /** Move code of the record closing a finished game. */
+    static final int END = 7;
+
+    private static final PieceGenerator.Kind[] KINDS = PieceGenerator.Kind.values();
+    private static final Controls.Action[] ACTIONS = Controls.Action.values();
+
+    final PieceGenerator.Kind kind;
+    final long seed;
+    final int width;
+    final int height;
+    private final int[] steps;
+    private final byte[] moves;
+    private final int count;
+    final boolean complete;
+    final int endStep;
+    final int score;
+    final int lines;
+    final int level;
+
+    private Replay(PieceGenerator.Kind kind, long seed, int width, int height, int[] steps, byte[] moves, int count,
+            boolean complete, int endStep, int score, int lines, int level) {
+        this.kind = kind;
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        this.steps = steps;
+        this.moves = moves;
+        this.count = count;
+        this.complete = complete;
+        this.endStep = endStep;
+        this.score = score;
+        this.lines = lines;
+        this.level = level;
+    }
+
+    int moveCount() {
+        return count;
+    }
+
+    int step(int index) {
+        return steps[index];
+    }
+
+    Controls.Action move(int index) {
+        return ACTIONS[moves[index]];
+    }
+
+    static Replay read(Path path) throws IOException {
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            in = ByteBuffer.allocate((int) channel.size());
+            while (in.hasRemaining() && channel.read(in) >= 0) {
+                // Read the whole file
+            }
+        }
+        in.flip();
+        return read(in);
+    }
+
+    static Replay read(ByteBuffer in) throws IOException {
+        try {
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a replay file");
+            }
+            int version = in.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported replay version " + version);
+            }
+            int kind = in.get();
+            if (kind < 0 || kind >= KINDS.length) {
+                throw new IOException("Unknown piece generator " + kind);
+            }
+            int width = getVarint(in);
+            int height = getVarint(in);
+            long seed = in.getLong();
+
+            int[] steps = new int[256];
+            byte[] moves = new byte[256];
+            int count = 0;
+            int step = 0;
+            while (in.hasRemaining()) {
+                int record = getVarint(in);
+                step += record >>> 3;
+                int move = record & 7;
+                if (move == END) {
+                    return new Replay(KINDS[kind], seed, width, height, steps, moves, count,
+                            true, step, getVarint(in), getVarint(in), getVarint(in));
+                }
+                if (count == steps.length) {
+                    steps = Arrays.copyOf(steps, count * 2);
+                    moves = Arrays.copyOf(moves, count * 2);
+                }
+                steps[count] = step;
+                moves[count] = (byte) move;
+                count++;
+            }
+            return new Replay(KINDS[kind], seed, width, height, steps, moves, count, false, step, 0, 0, 0);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated replay", e);
+        }
+    }
+
+    static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    static int getVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
@@ -0,0 +1,135 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Re-runs {@link Replay}s headless, as fast as the rules allow, and checks
+ * that each finished game ends with the recorded score, lines and level.
+ *
+ * Usage: {@code ReplayPlayer <replay file>...}; exits with status 1 if any
+ * replay does not match.
+ */
+class ReplayPlayer {
+    /** Final state of a replayed game. */
+    static final class Result {
+        final int steps;
+        final int score;
+        final int lines;
+        final int level;
+        final boolean gameOver;
+
+        Result(TetrisGame game) {
+            this.steps = game.steps();
+            this.score = game.score();
+            this.lines = game.linesRemoved();
+            this.level = game.level();
+            this.gameOver = !game.isStarted();
+        }
+
+        /** True if the game ended exactly as recorded. */
+        boolean matches(Replay replay) {
+            return replay.complete && gameOver && steps == replay.endStep && score == replay.score
+                    && lines == replay.lines && level == replay.level;
+        }
+    }
+
+    private ReplayPlayer() {
+    }
+
+    /**
+     * Plays {@code replay} through the same {@link TetrisGame} rules and step
+     * order as {@link EnhancedTetris}: the moves stamped with a step, then the
+     * step itself. An unfinished replay stops after its last move.
+     */
+    static Result play(Replay replay) {
+        TetrisEngine engine = new TetrisEngine(replay.width, replay.height);
+        TetrisGame game = new TetrisGame(engine, replay.kind.create(0), 1, true);
+        game.start(replay.seed);
+
+        int count = replay.moveCount();
+        int lastStep = replay.complete ? replay.endStep : count == 0 ? 0 : replay.step(count - 1);
+        int next = 0;
+        while (game.isStarted()) {
+            while (next < count && replay.step(next) == game.steps()) {
+                apply(game, replay.move(next++));
+            }
+            if (!game.isStarted() || game.steps() >= lastStep) {
+                break;
+            }
+            game.step();
+        }
+        return new Result(game);
+    }
+
+    /** Makes {@code move} in {@code game}, as the player's key press would. */
+    static void apply(TetrisGame game, Controls.Action move) {
+        switch (move) {
+            case MOVE_LEFT:
+                game.moveLeft();
+                break;
+            case MOVE_RIGHT:
+                game.moveRight();
+                break;
+            case SOFT_DROP:
+                game.oneLineDown();
+                break;
+            case HARD_DROP:
+                game.dropDown();
+                break;
+            case ROTATE_RIGHT:
+                game.rotateRight();
+                break;
+            case ROTATE_LEFT:
+                game.rotateLeft();
+                break;
+            case HOLD:
+                game.hold();
+                break;
+            default:
+                throw new IllegalArgumentException("Not a move: " + move);
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: ReplayPlayer <replay file>...");
+            System.exit(2);
+        }
+        boolean allMatch = true;
+        for (String arg : args) {
+            Path path = Paths.get(arg);
+            Replay replay;
+            try {
+                replay = Replay.read(path);
+            } catch (IOException e) {
+                System.out.printf("%s: %s%n", path, e.getMessage());
+                allMatch = false;
+                continue;
+            }
+
+            long start = System.nanoTime();
+            Result result = play(replay);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double gameSeconds = (double) result.steps / GameLoop.TICKS_PER_SECOND;
+
+            String verdict;
+            if (!replay.complete) {
+                verdict = "UNFINISHED";
+            } else if (result.matches(replay)) {
+                verdict = "OK";
+            } else {
+                verdict = String.format("MISMATCH (recorded score %d lines %d level %d steps %d)",
+                        replay.score, replay.lines, replay.level, replay.endStep);
+                allMatch = false;
+            }
+            System.out.printf("%s: %s score %d lines %d level %d steps %d, %d moves in %.1f ms (%.0fx real time)%n",
+                    path, verdict, result.score, result.lines, result.level, result.steps, replay.moveCount(),
+                    seconds * 1e3, gameSeconds / seconds);
+        }
+        if (!allMatch) {
+            System.exit(1);
+        }
+    }
+}
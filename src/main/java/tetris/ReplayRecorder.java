@@ -0,0 +1,135 @@
+package tetris;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a {@link Replay} while the game is played.
+ *
+ * Moves are encoded into a small buffer on the game loop thread; full
+ * buffers are handed to a writer thread that appends them to the file
+ * through a {@link FileChannel}, and come back for reuse once written.
+ */
+final class ReplayRecorder {
+    private static final int BUFFER_SIZE = 4096;
+    /** Room for the longest record, the END record with its three counters. */
+    private static final int MAX_RECORD = 20;
+
+    private final ExecutorService writer;
+    private final FileChannel channel;
+    private final ArrayBlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(4);
+    private ByteBuffer buffer;
+    private int lastStep = 0;
+    private boolean closed = false;
+    private volatile boolean failed = false;
+
+    private ReplayRecorder(FileChannel channel) {
+        this.channel = channel;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "replay-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    }
+
+    /** Creates {@code path} and writes the replay header. */
+    static ReplayRecorder create(Path path, PieceGenerator.Kind kind, long seed, int width, int height)
+            throws IOException {
+        Path dir = path.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ReplayRecorder recorder = new ReplayRecorder(channel);
+        ByteBuffer out = recorder.buffer;
+        out.putInt(Replay.MAGIC);
+        out.put((byte) Replay.VERSION);
+        out.put((byte) kind.ordinal());
+        Replay.putVarint(out, width);
+        Replay.putVarint(out, height);
+        out.putLong(seed);
+        return recorder;
+    }
+
+    /** Records {@code move}, made at game step {@code step}. */
+    synchronized void record(int step, Controls.Action move) {
+        if (closed) {
+            return;
+        }
+        ensureRoom();
+        Replay.putVarint(buffer, (step - lastStep) << 3 | move.ordinal());
+        lastStep = step;
+    }
+
+    /** Records the end of the game and closes the file. */
+    synchronized void finish(int step, int score, int lines, int level) {
+        if (closed) {
+            return;
+        }
+        ensureRoom();
+        Replay.putVarint(buffer, (step - lastStep) << 3 | Replay.END);
+        Replay.putVarint(buffer, score);
+        Replay.putVarint(buffer, lines);
+        Replay.putVarint(buffer, level);
+        close();
+    }
+
+    /** Writes what was recorded so far and closes the file; the replay is left unfinished. */
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        submit(buffer);
+        buffer = null;
+        writer.execute(() -> {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        writer.shutdown();
+    }
+
+    /** Waits for the writer to finish after {@link #close()}. */
+    boolean awaitClosed(long timeout, TimeUnit unit) throws InterruptedException {
+        return writer.awaitTermination(timeout, unit);
+    }
+
+    private void ensureRoom() {
+        if (buffer.remaining() < MAX_RECORD) {
+            submit(buffer);
+            buffer = free.poll();
+            if (buffer == null) {
+                buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            }
+        }
+    }
+
+    private void submit(ByteBuffer full) {
+        full.flip();
+        writer.execute(() -> {
+            try {
+                while (!failed && full.hasRemaining()) {
+                    channel.write(full);
+                }
+            } catch (IOException e) {
+                failed = true;
+                e.printStackTrace();
+            }
+            full.clear();
+            free.offer(full);
+        });
+    }
+}
@@ -0,0 +1,416 @@
+package tetris;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Results of every game ever archived, for queries over millions of games.
+ *
+ * Each field lives in its own memory-mapped {@link MappedColumn} file, one
+ * fixed-width entry per game, so queries touch only the pages they need
+ * and nothing is loaded on heap. A {@code meta} file holds the row count
+ * and the best row of every level, updated on each append.
+ *
+ * The rank index {@code rank-N.idx} lists rows 0..N-1 by score, highest
+ * first. Rows appended since are the unindexed tail, which queries scan;
+ * once it reaches {@link #REBUILD_TAIL} rows a background thread merges it
+ * into a new index file and switches to it.
+ */
+final class ScoreArchive implements Closeable {
+    static final String DIR_NAME = "tetris_archive";
+    static final int MAGIC = 0x54534341;
+    static final int VERSION = 1;
+    /** Levels above this share the last best-per-level slot. */
+    static final int MAX_LEVEL = 255;
+    /** Unindexed rows that trigger an index rebuild. */
+    static final int REBUILD_TAIL = 1 << 16;
+
+    private static final int META_SIZE = 16 + (MAX_LEVEL + 1) * 4;
+    private static final int COUNT_OFFSET = 8;
+    private static final int BEST_OFFSET = 16;
+
+    private final Path dir;
+    private final MappedColumn scores;
+    private final MappedColumn lines;
+    private final MappedColumn levels;
+    private final MappedColumn durations;
+    private final MappedColumn timestamps;
+    /** Every column above, made once so that appending allocates nothing. */
+    private final MappedColumn[] columns;
+    private final FileChannel metaChannel;
+    private final MappedByteBuffer meta;
+    private final int[] bestRow = new int[MAX_LEVEL + 1];
+
+    private int count;
+    private IntBuffer index;
+    private int indexed;
+    private Thread rebuild;
+    private boolean rebuildFailed = false;
+
+    private ScoreArchive(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        scores = new MappedColumn(dir.resolve("score.col"), 4);
+        lines = new MappedColumn(dir.resolve("lines.col"), 4);
+        levels = new MappedColumn(dir.resolve("level.col"), 4);
+        durations = new MappedColumn(dir.resolve("duration.col"), 8);
+        timestamps = new MappedColumn(dir.resolve("timestamp.col"), 8);
+        columns = new MappedColumn[] { scores, lines, levels, durations, timestamps };
+
+        metaChannel = FileChannel.open(dir.resolve("meta"), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        boolean created = metaChannel.size() == 0;
+        meta = metaChannel.map(FileChannel.MapMode.READ_WRITE, 0, META_SIZE);
+        if (created) {
+            meta.putInt(0, MAGIC);
+            meta.putInt(4, VERSION);
+            meta.putInt(COUNT_OFFSET, 0);
+            for (int level = 0; level <= MAX_LEVEL; level++) {
+                meta.putInt(BEST_OFFSET + level * 4, -1);
+            }
+        } else if (meta.getInt(0) != MAGIC || meta.getInt(4) != VERSION) {
+            metaChannel.close();
+            throw new IOException(dir + " is not a score archive");
+        }
+
+        count = meta.getInt(COUNT_OFFSET);
+        for (MappedColumn column : columns) {
+            column.ensureCapacity(count);
+        }
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            int row = meta.getInt(BEST_OFFSET + level * 4);
+            bestRow[level] = row < count ? row : -1;
+        }
+        openIndex();
+    }
+
+    static ScoreArchive open(Path dir) throws IOException {
+        return new ScoreArchive(dir);
+    }
+
+    /** Number of archived games. */
+    synchronized int size() {
+        return count;
+    }
+
+    /** Number of games covered by the rank index; the rest are scanned. */
+    synchronized int indexedSize() {
+        return indexed;
+    }
+
+    synchronized void append(GameResult result) throws IOException {
+        int row = count;
+        for (MappedColumn column : columns) {
+            column.ensureCapacity(row + 1);
+        }
+        scores.putInt(row, result.score);
+        lines.putInt(row, result.lines);
+        levels.putInt(row, result.level);
+        durations.putLong(row, result.durationMillis);
+        timestamps.putLong(row, result.timestamp);
+        // The count commits the row; a crash before it leaves the row out
+        count = row + 1;
+        meta.putInt(COUNT_OFFSET, count);
+
+        int level = levelSlot(result.level);
+        if (bestRow[level] < 0 || result.score > scores.getInt(bestRow[level])) {
+            bestRow[level] = row;
+            meta.putInt(BEST_OFFSET + level * 4, row);
+        }
+        if (count - indexed >= REBUILD_TAIL && rebuild == null && !rebuildFailed) {
+            startRebuild();
+        }
+    }
+
+    synchronized void appendAll(List<GameResult> results) throws IOException {
+        for (GameResult result : results) {
+            append(result);
+        }
+    }
+
+    /** The {@code k} best games, best first; ties go to the game archived first. */
+    synchronized List<GameResult> top(int k) {
+        long[] tail = sortedTail(indexed, count);
+        List<GameResult> top = new ArrayList<>(Math.min(k, count));
+        int i = 0;
+        int j = 0;
+        while (top.size() < k && (i < indexed || j < tail.length)) {
+            int row;
+            if (j == tail.length || (i < indexed && scores.getInt(index.get(i)) >= keyScore(tail[j]))) {
+                row = index.get(i++);
+            } else {
+                row = keyRow(tail[j++]);
+            }
+            top.add(result(row));
+        }
+        return top;
+    }
+
+    /**
+     * Percentile rank of {@code score}: the percentage of archived games that
+     * scored less, counting games with exactly {@code score} as half.
+     */
+    synchronized double percentile(int score) {
+        if (count == 0) {
+            return 0;
+        }
+        // The index is sorted highest first, so these are counts of games above and at-or-above
+        long above = firstIndexAtMost(score, false);
+        long atOrAbove = firstIndexAtMost(score, true);
+        for (int row = indexed; row < count; row++) {
+            int s = scores.getInt(row);
+            if (s > score) {
+                above++;
+            }
+            if (s >= score) {
+                atOrAbove++;
+            }
+        }
+        long below = count - atOrAbove;
+        long equal = atOrAbove - above;
+        return (below + equal / 2.0) * 100.0 / count;
+    }
+
+    /** Best game of each level that has any, by level; the last slot holds every level above {@link #MAX_LEVEL}. */
+    synchronized List<GameResult> bestPerLevel() {
+        List<GameResult> best = new ArrayList<>();
+        for (int level = 0; level <= MAX_LEVEL; level++) {
+            if (bestRow[level] >= 0) {
+                best.add(result(bestRow[level]));
+            }
+        }
+        return best;
+    }
+
+    /** Waits for the index to catch up and writes everything back to disk. */
+    @Override
+    public void close() throws IOException {
+        while (true) {
+            Thread running;
+            synchronized (this) {
+                running = rebuild;
+            }
+            if (running == null) {
+                break;
+            }
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        synchronized (this) {
+            for (MappedColumn column : columns) {
+                column.close();
+            }
+            meta.force();
+            metaChannel.close();
+        }
+    }
+
+    private GameResult result(int row) {
+        return new GameResult(scores.getInt(row), lines.getInt(row), levels.getInt(row),
+                durations.getLong(row), timestamps.getLong(row));
+    }
+
+    private static int levelSlot(int level) {
+        return Math.max(0, Math.min(level, MAX_LEVEL));
+    }
+
+    /** Number of indexed games scoring above {@code score}, or at or above it when {@code inclusive}. */
+    private int firstIndexAtMost(int score, boolean inclusive) {
+        int lo = 0;
+        int hi = indexed;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int s = scores.getInt(index.get(mid));
+            if (s > score || (inclusive && s == score)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** Sort keys of rows {@code from..to-1}, highest score first, then lowest row. */
+    private long[] sortedTail(int from, int to) {
+        long[] keys = new long[to - from];
+        for (int row = from; row < to; row++) {
+            keys[row - from] = (long) (Integer.MAX_VALUE - scores.getInt(row)) << 32 | row;
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    private static int keyScore(long key) {
+        return Integer.MAX_VALUE - (int) (key >>> 32);
+    }
+
+    private static int keyRow(long key) {
+        return (int) key;
+    }
+
+    /** Maps the newest complete rank index and deletes older ones. */
+    private void openIndex() throws IOException {
+        Path best = null;
+        int bestRows = 0;
+        List<Path> stale = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "rank-*.idx")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int rows;
+                try {
+                    rows = Integer.parseInt(name.substring(5, name.length() - 4));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (rows <= count && Files.size(file) == rows * 4L && rows > bestRows) {
+                    if (best != null) {
+                        stale.add(best);
+                    }
+                    best = file;
+                    bestRows = rows;
+                } else {
+                    stale.add(file);
+                }
+            }
+        }
+        for (Path file : stale) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // Still mapped on some platforms; removed on a later open
+            }
+        }
+        index = best == null ? IntBuffer.allocate(0) : mapIndex(best, bestRows);
+        indexed = bestRows;
+    }
+
+    private static IntBuffer mapIndex(Path file, int rows) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, rows * 4L).asIntBuffer();
+        }
+    }
+
+    private void startRebuild() {
+        IntBuffer oldIndex = index;
+        int oldRows = indexed;
+        int rows = count;
+        rebuild = new Thread(() -> rebuildIndex(oldIndex, oldRows, rows), "archive-index");
+        rebuild.setDaemon(true);
+        rebuild.start();
+    }
+
+    /**
+     * Merges rows {@code oldRows..rows-1} into the index of the first
+     * {@code oldRows}. Runs without the lock: rows below {@code rows} and
+     * their segments no longer change.
+     */
+    private void rebuildIndex(IntBuffer oldIndex, int oldRows, int rows) {
+        Path file = dir.resolve("rank-" + rows + ".idx");
+        Path temp = dir.resolve("rank-" + rows + ".tmp");
+        try {
+            long[] tail = sortedTail(oldRows, rows);
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+                int i = 0;
+                int j = 0;
+                while (i < oldRows || j < tail.length) {
+                    int row;
+                    if (j == tail.length || (i < oldRows && scores.getInt(oldIndex.get(i)) >= keyScore(tail[j]))) {
+                        row = oldIndex.get(i++);
+                    } else {
+                        row = keyRow(tail[j++]);
+                    }
+                    buffer.putInt(row);
+                    if (!buffer.hasRemaining()) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            out.write(buffer);
+                        }
+                        buffer.clear();
+                    }
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                out.force(false);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+            IntBuffer newIndex = mapIndex(file, rows);
+            synchronized (this) {
+                index = newIndex;
+                indexed = rows;
+                rebuild = null;
+                // Appends may have outpaced this rebuild
+                if (count - indexed >= REBUILD_TAIL) {
+                    startRebuild();
+                }
+            }
+            if (oldRows > 0) {
+                try {
+                    Files.deleteIfExists(dir.resolve("rank-" + oldRows + ".idx"));
+                } catch (IOException e) {
+                    // Still mapped on some platforms; removed on a later open
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            synchronized (this) {
+                rebuild = null;
+                rebuildFailed = true;
+            }
+        }
+    }
+
+    /**
+     * Usage: {@code ScoreArchive [dir] [top [k] | percentile <score> | levels]}.
+     * Prints the answer and how long the query took.
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get(args.length > 0 ? args[0] : DIR_NAME);
+        String query = args.length > 1 ? args[1] : "top";
+        try (ScoreArchive archive = ScoreArchive.open(dir)) {
+            System.out.printf("%d games, %d indexed%n", archive.size(), archive.indexedSize());
+            long start = System.nanoTime();
+            switch (query) {
+                case "top":
+                    int k = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+                    List<GameResult> top = archive.top(k);
+                    for (int i = 0; i < top.size(); i++) {
+                        System.out.printf("%3d. %s%n", i + 1, top.get(i));
+                    }
+                    break;
+                case "percentile":
+                    int score = Integer.parseInt(args[2]);
+                    System.out.printf("score %d is at percentile %.2f%n", score, archive.percentile(score));
+                    break;
+                case "levels":
+                    for (GameResult best : archive.bestPerLevel()) {
+                        System.out.printf("level %3d: %s%n", best.level, best);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown query " + query);
+            }
+            System.out.printf("query took %.2f ms%n", (System.nanoTime() - start) / 1e6);
+        }
+    }
+}
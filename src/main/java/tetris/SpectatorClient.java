@@ -0,0 +1,146 @@
+package tetris;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Watches a {@link SpectatorServer} with many spectators at once and reports
+ * what they receive.
+ *
+ * Every spectator decodes its stream into its own {@link SpectatorState}, so
+ * a malformed or out-of-order frame fails loudly. The first {@code slow}
+ * spectators stop reading for the first half of the run, with small socket
+ * buffers, so the server has to drop them to a keyframe; the others read as
+ * fast as the frames arrive.
+ *
+ * Usage: {@code SpectatorClient [host] [port] [spectators] [seconds] [slow]}
+ */
+class SpectatorClient {
+    static final int SLOW_RECEIVE_BUFFER = 1024;
+
+    private static final class Spectator {
+        final SocketChannel channel;
+        final boolean slow;
+        /** Grown to the pending frame when it is larger, as keyframes of large boards can be. */
+        ByteBuffer in = ByteBuffer.allocate(SpectatorServer.OUTPUT_LIMIT);
+        SpectatorState state;
+        long bytes;
+        long frames;
+        long keyframes;
+
+        Spectator(SocketChannel channel, boolean slow) {
+            this.channel = channel;
+            this.slow = slow;
+        }
+
+        /** Reads what has arrived and applies every complete frame; false at end of stream. */
+        boolean read() throws IOException {
+            int read = channel.read(in);
+            if (read < 0) {
+                return false;
+            }
+            bytes += read;
+            in.flip();
+            while (in.remaining() >= 2 && in.remaining() >= 2 + (in.getShort(in.position()) & 0xFFFF)) {
+                if (state == null) {
+                    // Streams start with a keyframe: length, type, step, then the board size
+                    state = new SpectatorState(in.getShort(in.position() + 7), in.getShort(in.position() + 9));
+                }
+                if (state.apply(in) == SpectatorState.KEYFRAME) {
+                    keyframes++;
+                }
+                frames++;
+            }
+            if (in.remaining() >= 2 && 2 + (in.getShort(in.position()) & 0xFFFF) > in.capacity()) {
+                in = ByteBuffer.allocate(2 + (in.getShort(in.position()) & 0xFFFF)).put(in);
+            } else {
+                in.compact();
+            }
+            return true;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : SpectatorServer.DEFAULT_PORT;
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        int slowCount = args.length > 4 ? Integer.parseInt(args[4]) : 0;
+
+        Selector selector = Selector.open();
+        List<Spectator> spectators = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            SocketChannel channel = SocketChannel.open();
+            if (i < slowCount) {
+                channel.socket().setReceiveBufferSize(SLOW_RECEIVE_BUFFER);
+            }
+            channel.connect(new InetSocketAddress(host, port));
+            channel.configureBlocking(false);
+            Spectator spectator = new Spectator(channel, i < slowCount);
+            spectators.add(spectator);
+            channel.register(selector, spectator.slow ? 0 : SelectionKey.OP_READ, spectator);
+        }
+        System.out.printf("%d spectators (%d slow) on %s:%d%n", count, slowCount, host, port);
+
+        long start = System.nanoTime();
+        long end = start + seconds * 1_000_000_000L;
+        long resume = start + seconds * 500_000_000L;
+        boolean stalled = slowCount > 0;
+        while (System.nanoTime() < end && !spectators.isEmpty()) {
+            selector.select(100);
+            if (stalled && System.nanoTime() - resume >= 0) {
+                stalled = false;
+                for (SelectionKey key : selector.keys()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+            for (SelectionKey key : selector.selectedKeys()) {
+                Spectator spectator = (Spectator) key.attachment();
+                if (!spectator.read()) {
+                    key.cancel();
+                    spectators.remove(spectator);
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long fastBytes = 0;
+        long fastFrames = 0;
+        long fastKeyframes = 0;
+        long slowKeyframes = 0;
+        int fast = 0;
+        for (Spectator spectator : spectators) {
+            if (spectator.slow) {
+                slowKeyframes += spectator.keyframes;
+            } else {
+                fast++;
+                fastBytes += spectator.bytes;
+                fastFrames += spectator.frames;
+                fastKeyframes += spectator.keyframes;
+            }
+        }
+        if (fast > 0) {
+            System.out.printf("fast spectators: %.0f B/s and %.1f frames/s each, %.1f B per frame, %.1f keyframes each%n",
+                    fastBytes / elapsed / fast, fastFrames / elapsed / fast,
+                    fastFrames == 0 ? 0.0 : (double) fastBytes / fastFrames, (double) fastKeyframes / fast);
+        }
+        if (slowCount > 0) {
+            System.out.printf("slow spectators: %.1f keyframes each%n", (double) slowKeyframes / slowCount);
+        }
+        Spectator last = spectators.isEmpty() ? null : spectators.get(spectators.size() - 1);
+        if (last != null && last.state != null) {
+            System.out.printf("last state: step %d, score %d, lines %d, level %d%n",
+                    last.state.step, last.state.score, last.state.lines, last.state.level);
+        }
+        for (Spectator spectator : spectators) {
+            spectator.channel.close();
+        }
+    }
+}
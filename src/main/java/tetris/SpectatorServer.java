@@ -0,0 +1,396 @@
+package tetris;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Streams one live game to any number of spectators over TCP.
+ *
+ * The game thread calls {@link #publish} after every step. It encodes the
+ * changes since the last step as a {@link SpectatorState} delta into a ring
+ * of frame slots and wakes the server thread, which serves every spectator
+ * through one {@link Selector}. The server thread keeps its own copy of the
+ * state by applying the frames, so it can send a keyframe to a spectator at
+ * any time without touching the game.
+ *
+ * Each spectator has a bounded output buffer of {@link #OUTPUT_LIMIT}, or
+ * room for {@link #BUFFERED_KEYFRAMES} keyframes on a board large enough to
+ * need more. When a frame does not fit, or the spectator has had frames
+ * waiting for longer than {@link #MAX_LAG_MILLIS}, it is marked stale and
+ * gets no more deltas; once what it was sent has drained, it is sent a
+ * keyframe of the current state and resumes from there. A slow spectator
+ * therefore skips states instead of holding up the game or the other
+ * spectators. If the server thread itself falls a whole ring behind, the
+ * game thread drops frames and sends a keyframe next. A failure to accept
+ * pauses accepting as in {@link GameServer}.
+ *
+ * Every {@link #REPORT_SECONDS} the frame rate, the fan-out rate and the
+ * bandwidth per spectator are printed.
+ *
+ * Usage: {@code SpectatorServer [port] [seed]} streams a demo game played by
+ * the {@link HeuristicPolicy}.
+ */
+class SpectatorServer implements Runnable {
+    static final int DEFAULT_PORT = 7778;
+    static final int RING_SLOTS = 64;
+    static final int OUTPUT_LIMIT = 16 * 1024;
+    static final int BUFFERED_KEYFRAMES = 4;
+    static final int SOCKET_BUFFER = 4 * 1024;
+    static final long MAX_LAG_MILLIS = 1000;
+    static final int REPORT_SECONDS = 5;
+    static final long ACCEPT_RETRY_MILLIS = 1000;
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    private final SelectionKey serverKey;
+    /** When accepting was paused after a failure, or 0 while accepting. */
+    private long acceptPausedAt = 0;
+
+    private final byte[][] ring = new byte[RING_SLOTS][];
+    private final int[] lengths = new int[RING_SLOTS];
+    /** Frames written by the game thread. */
+    private final AtomicLong published = new AtomicLong();
+    /** Frames taken by the server thread. */
+    private volatile long consumed = 0;
+
+    // Game thread
+    private SpectatorState current;
+    private SpectatorState previous;
+    private boolean resync = true;
+
+    // Server thread
+    private SpectatorState mirror;
+    /** Keyframe of the mirror, encoded once however many spectators catch up on it. */
+    private ByteBuffer keyframe;
+    private final ByteBuffer discard = ByteBuffer.allocate(256);
+    private int spectators = 0;
+    private volatile boolean running = true;
+
+    private final AtomicLong framesDropped = new AtomicLong();
+    private long frames = 0;
+    private long frameBytes = 0;
+    private long sentFrames = 0;
+    private long sentBytes = 0;
+    private long resyncs = 0;
+
+    /** Output buffer of one spectator; {@code stale} until it has caught up with a keyframe. */
+    private static final class Spectator {
+        ByteBuffer out = ByteBuffer.allocate(OUTPUT_LIMIT);
+        boolean stale = true;
+        /** When the output last went from empty to pending. */
+        long pendingSince;
+    }
+
+    SpectatorServer(InetSocketAddress address) throws IOException {
+        this.server = ServerSocketChannel.open();
+        this.server.bind(address);
+        this.server.configureBlocking(false);
+        this.selector = Selector.open();
+        this.serverKey = this.server.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /** Starts the server thread. */
+    void start() {
+        Thread thread = new Thread(this, "spectator-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /** Encodes the changes of {@code game} since the last call; call on the game thread. */
+    void publish(TetrisGame game) {
+        TetrisEngine engine = game.engine();
+        if (current == null || current.width != engine.width() || current.height != engine.height()) {
+            current = new SpectatorState(engine.width(), engine.height());
+            previous = new SpectatorState(engine.width(), engine.height());
+            resync = true;
+        }
+        current.capture(game);
+
+        long sequence = published.get();
+        if (sequence - consumed >= RING_SLOTS) {
+            framesDropped.incrementAndGet();
+            resync = true;
+            return;
+        }
+        int slot = (int) (sequence % RING_SLOTS);
+        if (ring[slot] == null || ring[slot].length < current.maxFrameBytes()) {
+            ring[slot] = new byte[current.maxFrameBytes()];
+        }
+        ByteBuffer frame = ByteBuffer.wrap(ring[slot]);
+        if (resync) {
+            current.writeKeyframe(frame);
+            resync = false;
+        } else if (!current.writeDelta(previous, frame)) {
+            return;
+        }
+        lengths[slot] = frame.position();
+        previous.copyFrom(current);
+        published.lazySet(sequence + 1);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        long nextReport = System.nanoTime() + REPORT_SECONDS * 1_000_000_000L;
+        try {
+            while (running) {
+                selector.select(acceptPausedAt != 0 ? ACCEPT_RETRY_MILLIS : REPORT_SECONDS * 1000L);
+                if (acceptPausedAt != 0 && System.nanoTime() - acceptPausedAt >= ACCEPT_RETRY_MILLIS * 1_000_000L) {
+                    resumeAccepting();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isValid() && key.isAcceptable()) {
+                            accept();
+                        } else if (key.isValid() && key.isReadable()) {
+                            // Spectators only listen; anything they send is discarded
+                            discard.clear();
+                            if (((SocketChannel) key.channel()).read(discard) < 0) {
+                                disconnect(key);
+                            }
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(key);
+                        }
+                    } catch (IOException e) {
+                        disconnect(key);
+                    }
+                }
+                fanOut();
+                if (System.nanoTime() - nextReport >= 0) {
+                    report();
+                    nextReport += REPORT_SECONDS * 1_000_000_000L;
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            try {
+                selector.close();
+                server.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /** Accepts every pending spectator; a failure only affects the connection it happened on. */
+    private void accept() {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                // The listening socket stays ready, so stop selecting it until something changes
+                System.err.println("accept failed: " + e.getMessage());
+                serverKey.interestOps(0);
+                acceptPausedAt = System.nanoTime();
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            SelectionKey key = null;
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+                // Keep the backlog in our buffer, where it can be dropped, rather than in the kernel's
+                channel.socket().setSendBufferSize(SOCKET_BUFFER);
+                key = channel.register(selector, SelectionKey.OP_READ, new Spectator());
+                spectators++;
+                flush(key);
+            } catch (IOException e) {
+                System.err.println("accept failed: " + e.getMessage());
+                if (key != null) {
+                    disconnect(key);
+                } else {
+                    try {
+                        channel.close();
+                    } catch (IOException closeFailed) {
+                        // Already gone
+                    }
+                }
+            }
+        }
+    }
+
+    private void resumeAccepting() {
+        if (acceptPausedAt != 0) {
+            acceptPausedAt = 0;
+            serverKey.interestOps(SelectionKey.OP_ACCEPT);
+        }
+    }
+
+    /** Applies the published frames to the mirror and queues them to every spectator that keeps up. */
+    private void fanOut() {
+        long end = published.get();
+        if (end == consumed) {
+            return;
+        }
+        long now = System.nanoTime();
+        for (long sequence = consumed; sequence < end; sequence++) {
+            int slot = (int) (sequence % RING_SLOTS);
+            ByteBuffer frame = ByteBuffer.wrap(ring[slot], 0, lengths[slot]);
+            if (mirror == null || frame.get(2) == SpectatorState.KEYFRAME && !matches(frame)) {
+                mirror = new SpectatorState(frame.getShort(7), frame.getShort(9));
+            }
+            mirror.apply(frame);
+            keyframe = null;
+            frames++;
+            frameBytes += lengths[slot];
+
+            for (SelectionKey key : selector.keys()) {
+                Spectator spectator = (Spectator) key.attachment();
+                if (spectator == null || !key.isValid() || spectator.stale) {
+                    continue;
+                }
+                boolean pending = spectator.out.position() > 0;
+                if (spectator.out.remaining() < lengths[slot]
+                        || pending && now - spectator.pendingSince > MAX_LAG_MILLIS * 1_000_000L) {
+                    spectator.stale = true;
+                    resyncs++;
+                    continue;
+                }
+                if (!pending) {
+                    spectator.pendingSince = now;
+                }
+                spectator.out.put(ring[slot], 0, lengths[slot]);
+                sentFrames++;
+                sentBytes += lengths[slot];
+            }
+            consumed = sequence + 1;
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() != null && key.isValid()) {
+                try {
+                    flush(key);
+                } catch (IOException e) {
+                    disconnect(key);
+                }
+            }
+        }
+    }
+
+    private boolean matches(ByteBuffer keyframe) {
+        return mirror.width == keyframe.getShort(7) && mirror.height == keyframe.getShort(9);
+    }
+
+    /** Writes what the socket takes; a stale spectator that has drained is sent a keyframe. */
+    private void flush(SelectionKey key) throws IOException {
+        Spectator spectator = (Spectator) key.attachment();
+        ByteBuffer out = spectator.out;
+        out.flip();
+        ((SocketChannel) key.channel()).write(out);
+        out.compact();
+        if (out.position() == 0 && spectator.stale) {
+            catchUp(key);
+            out = spectator.out;
+            out.flip();
+            ((SocketChannel) key.channel()).write(out);
+            out.compact();
+        }
+        key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /** Queues a keyframe of the mirror to a spectator with nothing pending. */
+    private void catchUp(SelectionKey key) {
+        Spectator spectator = (Spectator) key.attachment();
+        if (mirror == null) {
+            return;
+        }
+        if (keyframe == null) {
+            keyframe = ByteBuffer.allocate(mirror.maxFrameBytes());
+            mirror.writeKeyframe(keyframe);
+            keyframe.flip();
+        }
+        // Nothing is pending here, so a larger board's buffer can be swapped in
+        int limit = Math.max(OUTPUT_LIMIT, BUFFERED_KEYFRAMES * keyframe.remaining());
+        if (spectator.out.capacity() < limit) {
+            spectator.out = ByteBuffer.allocate(limit);
+        }
+        spectator.out.put(keyframe.duplicate());
+        spectator.stale = false;
+        spectator.pendingSince = System.nanoTime();
+        sentFrames++;
+        sentBytes += keyframe.remaining();
+    }
+
+    private void disconnect(SelectionKey key) {
+        if (key.attachment() != null) {
+            spectators--;
+            key.attach(null);
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already gone
+        }
+        // A descriptor was freed
+        resumeAccepting();
+    }
+
+    private void report() {
+        double seconds = REPORT_SECONDS;
+        System.out.printf("%d spectators, %.0f frames/s of %.1f B, fan-out %.0f frames/s %.1f KB/s,"
+                        + " %.0f B/s per spectator, %d resyncs, %d frames dropped%n",
+                spectators, frames / seconds, frames == 0 ? 0.0 : (double) frameBytes / frames,
+                sentFrames / seconds, sentBytes / seconds / 1024,
+                spectators == 0 ? 0.0 : sentBytes / seconds / spectators, resyncs, framesDropped.get());
+        frames = 0;
+        frameBytes = 0;
+        sentFrames = 0;
+        sentBytes = 0;
+        resyncs = 0;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+
+        SpectatorServer spectators = new SpectatorServer(new InetSocketAddress("127.0.0.1", port));
+        System.out.printf("streaming a demo game on 127.0.0.1:%d%n", port);
+
+        TetrisGame game = new TetrisGame(new TetrisEngine(), PieceGenerator.Kind.BAG.create(seed),
+                EnhancedTetris.PREVIEW_SIZE, true);
+        Autoplayer autoplayer = new Autoplayer(new HeuristicPolicy(), move -> { });
+        game.setListener(new TetrisGame.Listener() {
+            @Override
+            public void pieceSpawned() {
+                autoplayer.reset();
+            }
+        });
+        game.start(seed);
+        new GameLoop(new GameLoop.Stage() {
+            @Override
+            public void update() {
+                if (!game.isStarted()) {
+                    game.start(game.seed() + 1);
+                }
+                autoplayer.update(game);
+                game.step();
+                spectators.publish(game);
+            }
+
+            @Override
+            public void render(double alpha) {
+            }
+        }, GameLoop.TICKS_PER_SECOND).start();
+        spectators.run();
+    }
+}
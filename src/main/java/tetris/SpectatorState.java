@@ -0,0 +1,346 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * What a spectator sees of a game, and its binary encoding.
+ *
+ * A frame is a big-endian {@code u16} length followed by that many bytes:
+ * a {@code u8} type and the {@code u32} step of the game, then either
+ * <ul>
+ * <li>a keyframe: {@code u16} width and height, then every field below in
+ *     order and every row, or</li>
+ * <li>a delta: a {@code u8} mask of the fields that changed since the
+ *     previous frame, those fields in order, and for {@link #ROWS} a
+ *     {@code u16} count of changed rows each as its {@code u16} index and
+ *     cells.</li>
+ * </ul>
+ * Fields: {@link #STARTED} {@code u8}; {@link #PIECE} shape and rotation
+ * {@code u8}, x and y {@code i16}; {@link #SCORE} {@code i32};
+ * {@link #LINES} {@code i32}; {@link #LEVEL} {@code u8};
+ * {@link #HOLD} and {@link #NEXT} the {@code u8} shape. A row is its cells'
+ * shape ordinals, two per byte, low nibble first.
+ *
+ * While a piece falls only its position changes, so most frames are a few
+ * bytes; a lock sends the rows it touched and a line clear the rows above.
+ * A delta that would be at least as large as a keyframe, such as a line
+ * clear under a tall stack, is sent as a keyframe instead, so no frame is
+ * larger than {@link #maxFrameBytes()}.
+ */
+final class SpectatorState {
+    static final int KEYFRAME = 1;
+    static final int DELTA = 2;
+
+    static final int STARTED = 1;
+    static final int PIECE = 1 << 1;
+    static final int SCORE = 1 << 2;
+    static final int LINES = 1 << 3;
+    static final int LEVEL = 1 << 4;
+    static final int HOLD = 1 << 5;
+    static final int NEXT = 1 << 6;
+    static final int ROWS = 1 << 7;
+
+    /** Length prefix, type and step. */
+    static final int HEADER_BYTES = 2 + 1 + 4;
+
+    private static final Tetrominoes[] SHAPES = Tetrominoes.values();
+
+    final int width;
+    final int height;
+    private final int rowBytes;
+    /** Shape ordinal of every locked cell, row by row from the bottom. */
+    private final byte[] cells;
+
+    int step;
+    boolean started;
+    int shape;
+    int rotation;
+    int x;
+    int y;
+    int score;
+    int lines;
+    int level;
+    int hold;
+    int next;
+
+    SpectatorState(int width, int height) {
+        if (!fits(width, height)) {
+            throw new IllegalArgumentException("Board too large to stream: " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.rowBytes = (width + 1) / 2;
+        this.cells = new byte[width * height];
+    }
+
+    /** Whether a keyframe of a board this size fits in the {@code u16} length of a frame. */
+    static boolean fits(int width, int height) {
+        return maxFrameBytes(width, height) - 2 <= 0xFFFF;
+    }
+
+    /** Largest frame this board can produce, a keyframe; larger deltas are sent as keyframes. */
+    int maxFrameBytes() {
+        return maxFrameBytes(width, height);
+    }
+
+    private static int maxFrameBytes(int width, int height) {
+        return HEADER_BYTES + 4 + 1 + 6 + 4 + 4 + 1 + 1 + 1 + height * ((width + 1) / 2);
+    }
+
+    Tetrominoes shapeAt(int x, int y) {
+        return SHAPES[cells[y * width + x]];
+    }
+
+    /** Copies the state of a running game. */
+    void capture(TetrisGame game) {
+        TetrisEngine engine = game.engine();
+        Tetromino piece = engine.curPiece();
+        step = game.steps();
+        started = game.isStarted();
+        shape = piece.getShape().ordinal();
+        rotation = piece.getRotation();
+        x = engine.curX();
+        y = engine.curY();
+        score = game.score();
+        lines = game.linesRemoved();
+        level = game.level();
+        hold = ordinal(game.heldPiece());
+        next = ordinal(game.nextPiece());
+        for (int row = 0; row < height; row++) {
+            int base = row * width;
+            if (engine.isRowEmpty(row)) {
+                Arrays.fill(cells, base, base + width, (byte) 0);
+                continue;
+            }
+            for (int col = 0; col < width; col++) {
+                cells[base + col] = (byte) engine.shapeAt(col, row).ordinal();
+            }
+        }
+    }
+
+    void copyFrom(SpectatorState other) {
+        System.arraycopy(other.cells, 0, cells, 0, cells.length);
+        step = other.step;
+        started = other.started;
+        shape = other.shape;
+        rotation = other.rotation;
+        x = other.x;
+        y = other.y;
+        score = other.score;
+        lines = other.lines;
+        level = other.level;
+        hold = other.hold;
+        next = other.next;
+    }
+
+    void writeKeyframe(ByteBuffer out) {
+        int start = out.position();
+        out.putShort((short) 0);
+        out.put((byte) KEYFRAME);
+        out.putInt(step);
+        out.putShort((short) width);
+        out.putShort((short) height);
+        writeFields(out, STARTED | PIECE | SCORE | LINES | LEVEL | HOLD | NEXT);
+        for (int row = 0; row < height; row++) {
+            writeRow(out, row);
+        }
+        out.putShort(start, (short) (out.position() - start - 2));
+    }
+
+    /**
+     * Writes the changes from {@code previous} to this state, or a keyframe if
+     * that is smaller; writes nothing and returns false if there are none.
+     */
+    boolean writeDelta(SpectatorState previous, ByteBuffer out) {
+        int fields = 0;
+        if (started != previous.started) {
+            fields |= STARTED;
+        }
+        if (shape != previous.shape || rotation != previous.rotation || x != previous.x || y != previous.y) {
+            fields |= PIECE;
+        }
+        if (score != previous.score) {
+            fields |= SCORE;
+        }
+        if (lines != previous.lines) {
+            fields |= LINES;
+        }
+        if (level != previous.level) {
+            fields |= LEVEL;
+        }
+        if (hold != previous.hold) {
+            fields |= HOLD;
+        }
+        if (next != previous.next) {
+            fields |= NEXT;
+        }
+        int changedRows = 0;
+        for (int row = 0; row < height; row++) {
+            if (!rowEquals(previous, row)) {
+                changedRows++;
+            }
+        }
+        if (changedRows != 0) {
+            fields |= ROWS;
+        }
+        if (fields == 0) {
+            return false;
+        }
+        int rowsBytes = changedRows == 0 ? 0 : 2 + changedRows * (2 + rowBytes);
+        if (HEADER_BYTES + 1 + fieldBytes(fields) + rowsBytes >= maxFrameBytes()) {
+            writeKeyframe(out);
+            return true;
+        }
+
+        int start = out.position();
+        out.putShort((short) 0);
+        out.put((byte) DELTA);
+        out.putInt(step);
+        out.put((byte) fields);
+        writeFields(out, fields);
+        if (changedRows != 0) {
+            out.putShort((short) changedRows);
+            for (int row = 0; row < height; row++) {
+                if (!rowEquals(previous, row)) {
+                    out.putShort((short) row);
+                    writeRow(out, row);
+                }
+            }
+        }
+        out.putShort(start, (short) (out.position() - start - 2));
+        return true;
+    }
+
+    /**
+     * Applies the frame at the position of {@code in} and moves past it;
+     * returns its type. A delta must follow the frame it was encoded against.
+     */
+    int apply(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        int end = in.position() + length;
+        int type = in.get();
+        step = in.getInt();
+        if (type == KEYFRAME) {
+            int frameWidth = in.getShort();
+            int frameHeight = in.getShort();
+            if (frameWidth != width || frameHeight != height) {
+                throw new IllegalArgumentException("Board size " + frameWidth + "x" + frameHeight
+                        + ", expected " + width + "x" + height);
+            }
+            readFields(in, STARTED | PIECE | SCORE | LINES | LEVEL | HOLD | NEXT);
+            for (int row = 0; row < height; row++) {
+                readRow(in, row);
+            }
+        } else if (type == DELTA) {
+            int fields = in.get() & 0xFF;
+            readFields(in, fields);
+            if ((fields & ROWS) != 0) {
+                int count = in.getShort() & 0xFFFF;
+                for (int i = 0; i < count; i++) {
+                    readRow(in, in.getShort() & 0xFFFF);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown frame type " + type);
+        }
+        if (in.position() != end) {
+            throw new IllegalArgumentException("Frame length " + length + " does not match its contents");
+        }
+        return type;
+    }
+
+    private void writeFields(ByteBuffer out, int fields) {
+        if ((fields & STARTED) != 0) {
+            out.put((byte) (started ? 1 : 0));
+        }
+        if ((fields & PIECE) != 0) {
+            out.put((byte) shape);
+            out.put((byte) rotation);
+            out.putShort((short) x);
+            out.putShort((short) y);
+        }
+        if ((fields & SCORE) != 0) {
+            out.putInt(score);
+        }
+        if ((fields & LINES) != 0) {
+            out.putInt(lines);
+        }
+        if ((fields & LEVEL) != 0) {
+            out.put((byte) level);
+        }
+        if ((fields & HOLD) != 0) {
+            out.put((byte) hold);
+        }
+        if ((fields & NEXT) != 0) {
+            out.put((byte) next);
+        }
+    }
+
+    private static int fieldBytes(int fields) {
+        return ((fields & STARTED) != 0 ? 1 : 0) + ((fields & PIECE) != 0 ? 6 : 0)
+                + ((fields & SCORE) != 0 ? 4 : 0) + ((fields & LINES) != 0 ? 4 : 0)
+                + ((fields & LEVEL) != 0 ? 1 : 0) + ((fields & HOLD) != 0 ? 1 : 0)
+                + ((fields & NEXT) != 0 ? 1 : 0);
+    }
+
+    private void readFields(ByteBuffer in, int fields) {
+        if ((fields & STARTED) != 0) {
+            started = in.get() != 0;
+        }
+        if ((fields & PIECE) != 0) {
+            shape = in.get();
+            rotation = in.get();
+            x = in.getShort();
+            y = in.getShort();
+        }
+        if ((fields & SCORE) != 0) {
+            score = in.getInt();
+        }
+        if ((fields & LINES) != 0) {
+            lines = in.getInt();
+        }
+        if ((fields & LEVEL) != 0) {
+            level = in.get() & 0xFF;
+        }
+        if ((fields & HOLD) != 0) {
+            hold = in.get();
+        }
+        if ((fields & NEXT) != 0) {
+            next = in.get();
+        }
+    }
+
+    private boolean rowEquals(SpectatorState other, int row) {
+        int base = row * width;
+        for (int i = base; i < base + width; i++) {
+            if (cells[i] != other.cells[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeRow(ByteBuffer out, int row) {
+        int base = row * width;
+        for (int col = 0; col < width; col += 2) {
+            int high = col + 1 < width ? cells[base + col + 1] : 0;
+            out.put((byte) (cells[base + col] | high << 4));
+        }
+    }
+
+    private void readRow(ByteBuffer in, int row) {
+        int base = row * width;
+        for (int col = 0; col < width; col += 2) {
+            int packed = in.get();
+            cells[base + col] = (byte) (packed & 0xF);
+            if (col + 1 < width) {
+                cells[base + col + 1] = (byte) (packed >> 4 & 0xF);
+            }
+        }
+    }
+
+    private static int ordinal(Tetromino piece) {
+        return piece == null ? 0 : piece.getShape().ordinal();
+    }
+}
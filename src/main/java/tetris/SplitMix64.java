@@ -0,0 +1,45 @@
+package tetris;
+
+/**
+ * The generator of {@link java.util.SplittableRandom}, with a state that can
+ * be read and set so that a game can be saved mid-sequence.
+ *
+ * For the same seed {@link #nextInt(int)} returns what
+ * {@code new SplittableRandom(seed).nextInt(bound)} does, so games seeded
+ * before it replaced {@code SplittableRandom} still deal the same pieces.
+ */
+final class SplitMix64 {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long state;
+
+    SplitMix64(long seed) {
+        state = seed;
+    }
+
+    long state() {
+        return state;
+    }
+
+    void setState(long state) {
+        this.state = state;
+    }
+
+    /** Uniform in {@code [0, bound)}, rejecting the values that would favour the low end. */
+    int nextInt(int bound) {
+        int r = nextInt();
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            return r & m;
+        }
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = nextInt() >>> 1) {
+        }
+        return r;
+    }
+
+    private int nextInt() {
+        long z = state += GOLDEN_GAMMA;
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+}
@@ -0,0 +1,266 @@
+package tetris;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class Tetris extends JPanel implements ActionListener {
+    private static final int CELL_SIZE = 30;
+    private static final int DELAY = 400;
+
+    private Timer timer;
+    private boolean isFallingFinished = false;
+    private boolean isStarted = false;
+    private boolean isPaused = false;
+    private int score = 0;
+    private JLabel statusBar;
+    private TetrisEngine engine;
+    private PieceGenerator generator;
+    private CellSprites sprites;
+    private final int boardWidth;
+    private final int boardHeight;
+
+    public Tetris(JFrame parent) {
+        this(parent, TetrisEngine.DEFAULT_WIDTH, TetrisEngine.DEFAULT_HEIGHT);
+    }
+
+    public Tetris(JFrame parent, int width, int height) {
+        setFocusable(true);
+        boardWidth = width;
+        boardHeight = height;
+        engine = new TetrisEngine(width, height);
+        engine.setListener(this::repaintCells);
+        generator = new UniformGenerator();
+        timer = new Timer(DELAY, this);
+        timer.start();
+
+        statusBar = new JLabel(" 0");
+        parent.add(statusBar, BorderLayout.SOUTH);
+
+        addKeyListener(new TAdapter());
+        clearBoard();
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        if (isFallingFinished) {
+            isFallingFinished = false;
+            newPiece();
+        } else {
+            oneLineDown();
+        }
+    }
+
+    private int squareWidth() {
+        return Math.max(1, (int) getSize().getWidth() / boardWidth);
+    }
+
+    private int squareHeight() {
+        return Math.max(1, (int) getSize().getHeight() / boardHeight);
+    }
+
+    private void repaintCells(int minX, int minY, int maxX, int maxY) {
+        int boardTop = (int) getSize().getHeight() - boardHeight * squareHeight();
+        repaint(minX * squareWidth(), boardTop + (boardHeight - 1 - maxY) * squareHeight(),
+                (maxX - minX + 1) * squareWidth(), (maxY - minY + 1) * squareHeight());
+    }
+
+    private Tetrominoes shapeAt(int x, int y) {
+        return engine.shapeAt(x, y);
+    }
+
+    public void start() {
+        if (isPaused) {
+            return;
+        }
+
+        isStarted = true;
+        isFallingFinished = false;
+        score = 0;
+        generator.reset(ThreadLocalRandom.current().nextLong());
+        clearBoard();
+        newPiece();
+        timer.start();
+    }
+
+    private void pause() {
+        if (!isStarted) {
+            return;
+        }
+
+        isPaused = !isPaused;
+        if (isPaused) {
+            timer.stop();
+            statusBar.setText("paused");
+        } else {
+            timer.start();
+            statusBar.setText(String.valueOf(score));
+        }
+        repaint();
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        super.paint(g);
+
+        if (sprites == null || sprites.width() != squareWidth() || sprites.height() != squareHeight()) {
+            if (sprites != null) {
+                sprites.flush();
+            }
+            sprites = new CellSprites(squareWidth(), squareHeight());
+        }
+
+        Dimension size = getSize();
+        int boardTop = (int) size.getHeight() - boardHeight * squareHeight();
+
+        // Only the rows in the repainted area; a board taller than the panel shows its bottom
+        Rectangle clip = g.getClipBounds();
+        int firstRow = 0;
+        int lastRow = boardHeight - 1;
+        if (clip != null) {
+            firstRow = Math.max(firstRow, Math.floorDiv(clip.y - boardTop, squareHeight()));
+            lastRow = Math.min(lastRow, Math.floorDiv(clip.y + clip.height - 1 - boardTop, squareHeight()));
+        }
+        for (int i = firstRow; i <= lastRow; ++i) {
+            if (engine.isRowEmpty(boardHeight - i - 1)) {
+                continue;
+            }
+            for (int j = 0; j < boardWidth; ++j) {
+                Tetrominoes shape = shapeAt(j, boardHeight - i - 1);
+                if (shape != Tetrominoes.NoShape) {
+                    drawSquare(g, j * squareWidth(),
+                            boardTop + i * squareHeight(), shape);
+                }
+            }
+        }
+
+        Tetromino curPiece = engine.curPiece();
+        if (curPiece.getShape() != Tetrominoes.NoShape) {
+            for (int i = 0; i < 4; ++i) {
+                int x = engine.curX() + curPiece.x(i);
+                int y = engine.curY() - curPiece.y(i);
+                drawSquare(g, x * squareWidth(),
+                        boardTop + (boardHeight - y - 1) * squareHeight(),
+                        curPiece.getShape());
+            }
+        }
+    }
+
+    private void dropDown() {
+        tryMove(engine.curPiece(), engine.curX(), engine.dropY());
+        pieceDropped();
+    }
+
+    private void oneLineDown() {
+        if (!tryMove(engine.curPiece(), engine.curX(), engine.curY() - 1)) {
+            pieceDropped();
+        }
+    }
+
+    private void clearBoard() {
+        engine.clear();
+    }
+
+    private void pieceDropped() {
+        int fullRows = engine.lockPiece();
+
+        removeFullLines(fullRows);
+
+        if (!isFallingFinished) {
+            newPiece();
+        }
+    }
+
+    private void newPiece() {
+        if (!engine.spawn(Tetromino.of(generator.next()))) {
+            engine.clearPiece();
+            timer.stop();
+            isStarted = false;
+            statusBar.setText("game over");
+        }
+    }
+
+    private boolean tryMove(Tetromino newPiece, int newX, int newY) {
+        return engine.tryMove(newPiece, newX, newY);
+    }
+
+    private void removeFullLines(int fullRows) {
+        int numFullLines = Integer.bitCount(fullRows);
+        engine.removeLines(engine.lockedBottom(), fullRows);
+
+        if (numFullLines > 0) {
+            score += numFullLines;
+            statusBar.setText(String.valueOf(score));
+            isFallingFinished = true;
+            engine.clearPiece();
+        }
+    }
+
+    private void drawSquare(Graphics g, int x, int y, Tetrominoes shape) {
+        sprites.draw(g, x, y, shape);
+    }
+
+    class TAdapter extends KeyAdapter {
+        @Override
+        public void keyPressed(KeyEvent e) {
+            Tetromino curPiece = engine.curPiece();
+            if (!isStarted || curPiece.getShape() == Tetrominoes.NoShape) {
+                return;
+            }
+
+            int keycode = e.getKeyCode();
+
+            if (keycode == 'p' || keycode == 'P') {
+                pause();
+                return;
+            }
+
+            if (isPaused) {
+                return;
+            }
+
+            switch (keycode) {
+                case KeyEvent.VK_LEFT:
+                    tryMove(curPiece, engine.curX() - 1, engine.curY());
+                    break;
+                case KeyEvent.VK_RIGHT:
+                    tryMove(curPiece, engine.curX() + 1, engine.curY());
+                    break;
+                case KeyEvent.VK_DOWN:
+                    tryMove(curPiece.rotateRight(), engine.curX(), engine.curY());
+                    break;
+                case KeyEvent.VK_UP:
+                    tryMove(curPiece.rotateLeft(), engine.curX(), engine.curY());
+                    break;
+                case KeyEvent.VK_SPACE:
+                    dropDown();
+                    break;
+                case 'd':
+                case 'D':
+                    oneLineDown();
+                    break;
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        JFrame frame = new JFrame("Tetris");
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setSize(320, 640);
+        frame.setLocationRelativeTo(null);
+
+        // An argument like 30x60 sets the board size
+        Tetris game = args.length > 0 && args[0].matches("\\d+x\\d+")
+                ? new Tetris(frame, Integer.parseInt(args[0].substring(0, args[0].indexOf('x'))),
+                        Integer.parseInt(args[0].substring(args[0].indexOf('x') + 1)))
+                : new Tetris(frame);
+        frame.add(game);
+        frame.setVisible(true);
+
+        game.start();
+    }
+}
@@ -0,0 +1,496 @@
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ * Headless playfield shared by the Swing front-ends.
+ *
+ * Each row is stored as a bitmask in 64-bit words (bit x of word x / 64 set
+ * when column x is occupied), so collision, locking and full-row checks are a
+ * handful of ANDs/ORs against the precomputed row masks of each
+ * {@link Tetromino} rotation, touching at most two words per piece row. The
+ * shape of every locked cell is kept in a separate color plane that is only
+ * read when rendering.
+ *
+ * Rows are not stored in board order: {@code slots} maps each row to its
+ * storage, so removing lines shifts the rows above by moving one int each,
+ * however wide the board is, and the removed rows' storage is emptied and
+ * reused at the top.
+ *
+ * Column heights and the height of the whole stack are kept up to date on
+ * every change, so the distance a piece can fall is found in O(piece width);
+ * the drop position of the current piece is cached until the piece or the
+ * board changes.
+ *
+ * Every row also keeps a count of its occupied cells. Locking a piece only
+ * checks the rows it touched and reports them as a small mask, and all the
+ * completed rows are then removed in one compaction pass over the stack.
+ * None of this depends on the height of the board above the stack.
+ */
+class TetrisEngine {
+    static final int DEFAULT_WIDTH = 10;
+    static final int DEFAULT_HEIGHT = 20;
+    static final int MAX_WIDTH = 4096;
+    /** Rows still fit the {@code u16} fields of the spectator frames. */
+    static final int MAX_HEIGHT = 65535;
+
+    /**
+     * Receives the cells whose appearance may have changed, as inclusive
+     * board-cell bounds (y grows upwards). Called after the engine is updated.
+     */
+    interface BoardListener {
+        void cellsChanged(int minX, int minY, int maxX, int maxY);
+    }
+
+    private static final Tetrominoes[] SHAPES = Tetrominoes.values();
+    private static final Tetromino NO_PIECE = Tetromino.of(Tetrominoes.NoShape);
+
+    private final int width;
+    private final int height;
+    /** Words per row. */
+    private final int words;
+    /** Storage of row {@code y}: its words start at {@code slots[y] * words}, its colors at {@code slots[y] * width}. */
+    private final int[] slots;
+    private final long[] cells;
+    private final byte[] colors;
+    private final int[] heights;
+    /** Occupied cells of every row, by slot. */
+    private final int[] rowFill;
+    private int stackTop = 0;
+
+    private Tetromino curPiece;
+    private int curX = 0;
+    private int curY = 0;
+    private int dropY = 0;
+    private boolean dropValid = false;
+    private int lockedBottom = 0;
+    private BoardListener listener;
+
+    public TetrisEngine() {
+        this(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+    }
+
+    public TetrisEngine(int width, int height) {
+        if (width < 4 || width > MAX_WIDTH || height < 4 || height > MAX_HEIGHT) {
+            throw new IllegalArgumentException("Unsupported board size " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.words = (width + 63) >>> 6;
+        this.slots = new int[height];
+        for (int y = 0; y < height; y++) {
+            slots[y] = y;
+        }
+        this.cells = new long[height * words];
+        this.colors = new byte[width * height];
+        this.heights = new int[width];
+        this.rowFill = new int[height];
+        this.curPiece = NO_PIECE;
+    }
+
+    public void setListener(BoardListener listener) {
+        this.listener = listener;
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    public Tetromino curPiece() {
+        return curPiece;
+    }
+
+    public int curX() {
+        return curX;
+    }
+
+    public int curY() {
+        return curY;
+    }
+
+    public void clear() {
+        Arrays.fill(cells, 0);
+        Arrays.fill(colors, (byte) 0);
+        Arrays.fill(rowFill, 0);
+        Arrays.fill(heights, 0);
+        stackTop = 0;
+        dropValid = false;
+        boardChanged();
+    }
+
+    /** Copies the board and the current piece of {@code other}, which must have the same size. */
+    public void copyFrom(TetrisEngine other) {
+        if (other.width != width || other.height != height) {
+            throw new IllegalArgumentException("Board size mismatch");
+        }
+        System.arraycopy(other.slots, 0, slots, 0, height);
+        System.arraycopy(other.cells, 0, cells, 0, cells.length);
+        System.arraycopy(other.colors, 0, colors, 0, colors.length);
+        System.arraycopy(other.heights, 0, heights, 0, width);
+        System.arraycopy(other.rowFill, 0, rowFill, 0, height);
+        stackTop = other.stackTop;
+        curPiece = other.curPiece;
+        curX = other.curX;
+        curY = other.curY;
+        dropValid = false;
+        boardChanged();
+    }
+
+    /**
+     * Replaces the locked cells with {@code rows} rows of shape ordinals from
+     * {@code shapes}, {@code width()} per row starting at the bottom row, and
+     * empties the rows above. The current piece is kept.
+     */
+    public void setCells(byte[] shapes, int rows) {
+        for (int y = 0; y < Math.max(stackTop, rows); y++) {
+            int slot = slots[y];
+            if (rowFill[slot] != 0) {
+                Arrays.fill(cells, slot * words, slot * words + words, 0);
+                Arrays.fill(colors, slot * width, slot * width + width, (byte) 0);
+                rowFill[slot] = 0;
+            }
+        }
+        Arrays.fill(heights, 0);
+        for (int y = 0; y < rows; y++) {
+            int slot = slots[y];
+            int fill = 0;
+            for (int x = 0; x < width; x++) {
+                byte shape = shapes[y * width + x];
+                if (shape != 0) {
+                    cells[slot * words + (x >>> 6)] |= 1L << x;
+                    colors[slot * width + x] = shape;
+                    heights[x] = y + 1;
+                    fill++;
+                }
+            }
+            rowFill[slot] = fill;
+        }
+        updateStackTop();
+        dropValid = false;
+        boardChanged();
+    }
+
+    /** Sets a single locked cell; {@link Tetrominoes#NoShape} empties it. */
+    public void setCell(int x, int y, Tetrominoes shape) {
+        int slot = slots[y];
+        int index = slot * words + (x >>> 6);
+        long bit = 1L << x;
+        if (shape == Tetrominoes.NoShape) {
+            if ((cells[index] & bit) != 0) {
+                cells[index] &= ~bit;
+                rowFill[slot]--;
+            }
+            if (heights[x] == y + 1) {
+                heights[x] = columnTop(x, y);
+                if (stackTop == y + 1) {
+                    updateStackTop();
+                }
+            }
+        } else {
+            if ((cells[index] & bit) == 0) {
+                cells[index] |= bit;
+                rowFill[slot]++;
+            }
+            heights[x] = Math.max(heights[x], y + 1);
+            stackTop = Math.max(stackTop, y + 1);
+        }
+        colors[slot * width + x] = (byte) shape.ordinal();
+        dropValid = false;
+        if (listener != null) {
+            listener.cellsChanged(x, y, x, y);
+        }
+    }
+
+    public Tetrominoes shapeAt(int x, int y) {
+        return SHAPES[colors[slots[y] * width + x]];
+    }
+
+    public boolean isOccupied(int x, int y) {
+        return (cells[slots[y] * words + (x >>> 6)] & (1L << x)) != 0;
+    }
+
+    /**
+     * Bitmask of the occupied columns in row {@code y} of a board at most 31
+     * columns wide, the size the AI policies' bitboards hold.
+     */
+    public int row(int y) {
+        return (int) cells[slots[y] * words];
+    }
+
+    public boolean isRowEmpty(int y) {
+        return rowFill[slots[y]] == 0;
+    }
+
+    /** One more than the highest occupied row of column {@code x}, 0 when empty. */
+    public int columnHeight(int x) {
+        return heights[x];
+    }
+
+    public boolean isLineFull(int y) {
+        return rowFill[slots[y]] == width;
+    }
+
+    /** Returns true if {@code piece} fits at ({@code x}, {@code y}) without touching the current piece. */
+    public boolean fits(Tetromino piece, int x, int y) {
+        int left = x + piece.minX();
+        if (left < 0 || x + piece.maxX() >= width) {
+            return false;
+        }
+        int top = y - piece.minY();
+        if (y - piece.maxY() < 0 || top >= height) {
+            return false;
+        }
+        int[] pieceRows = piece.rowMasks();
+        int word = left >>> 6;
+        int shift = left & 63;
+        for (int k = 0; k < pieceRows.length; k++) {
+            int index = slots[top - k] * words + word;
+            if ((cells[index] & ((long) pieceRows[k] << shift)) != 0) {
+                return false;
+            }
+            // Pieces are at most four columns wide, so only these can reach into the next word
+            if (shift > 60) {
+                long spill = (long) pieceRows[k] >>> (64 - shift);
+                if (spill != 0 && (cells[index + 1] & spill) != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Moves the current piece if it fits at the new position. */
+    public boolean tryMove(Tetromino newPiece, int newX, int newY) {
+        if (!fits(newPiece, newX, newY)) {
+            return false;
+        }
+        movePiece(newPiece, newX, newY);
+        return true;
+    }
+
+    /** Removes the current piece without locking it. */
+    public void clearPiece() {
+        movePiece(NO_PIECE, curX, curY);
+    }
+
+    /** Places {@code piece} at the spawn position; returns false if it is blocked there. */
+    public boolean spawn(Tetromino piece) {
+        movePiece(piece, width / 2 + 1, height - 1 + piece.minY());
+        return fits(piece, curX, curY);
+    }
+
+    /** Lowest y the current piece can fall to from its current position. */
+    public int dropY() {
+        if (!dropValid) {
+            dropY = landingY(curPiece, curX, curY);
+            dropValid = true;
+        }
+        return dropY;
+    }
+
+    /**
+     * Lowest y {@code piece} can fall to from ({@code x}, {@code y}). Uses the
+     * column heights when the piece is above the stack in every column it
+     * covers, and probes row by row when it is tucked under an overhang.
+     */
+    public int landingY(Tetromino piece, int x, int y) {
+        int[] bottoms = piece.columnBottoms();
+        int left = x + piece.minX();
+        if (left < 0 || left + bottoms.length > width) {
+            return y;
+        }
+        int distance = Integer.MAX_VALUE;
+        for (int k = 0; k < bottoms.length; k++) {
+            int gap = y - bottoms[k] - heights[left + k];
+            if (gap < 0) {
+                return probeLandingY(piece, x, y);
+            }
+            distance = Math.min(distance, gap);
+        }
+        return y - distance;
+    }
+
+    private int probeLandingY(Tetromino piece, int x, int y) {
+        while (y > 0 && fits(piece, x, y - 1)) {
+            y--;
+        }
+        return y;
+    }
+
+    /**
+     * Writes the current piece into the board and returns the rows it
+     * completed as a mask relative to {@link #lockedBottom()}: bit k is set
+     * when row {@code lockedBottom() + k} is full.
+     */
+    public int lockPiece() {
+        int left = curX + curPiece.minX();
+        int top = curY - curPiece.minY();
+        int bottom = curY - curPiece.maxY();
+        int[] pieceRows = curPiece.rowMasks();
+        int word = left >>> 6;
+        int shift = left & 63;
+        int fullRows = 0;
+        for (int k = 0; k < pieceRows.length; k++) {
+            int y = top - k;
+            int slot = slots[y];
+            int index = slot * words + word;
+            cells[index] |= (long) pieceRows[k] << shift;
+            if (shift > 60) {
+                long spill = (long) pieceRows[k] >>> (64 - shift);
+                if (spill != 0) {
+                    cells[index + 1] |= spill;
+                }
+            }
+            rowFill[slot] += Integer.bitCount(pieceRows[k]);
+            if (rowFill[slot] == width) {
+                fullRows |= 1 << (y - bottom);
+            }
+        }
+        byte color = (byte) curPiece.getShape().ordinal();
+        for (int i = 0; i < 4; i++) {
+            int x = curX + curPiece.x(i);
+            int y = curY - curPiece.y(i);
+            colors[slots[y] * width + x] = color;
+            heights[x] = Math.max(heights[x], y + 1);
+        }
+        stackTop = Math.max(stackTop, top + 1);
+        lockedBottom = bottom;
+        dropValid = false;
+        pieceChanged(curPiece, curX, curY);
+        return fullRows;
+    }
+
+    /** Lowest row of the piece locked last; the base of the {@link #lockPiece()} mask. */
+    public int lockedBottom() {
+        return lockedBottom;
+    }
+
+    /** Removes every full row and returns how many were removed. */
+    public int removeFullLines() {
+        int removed = 0;
+        int top = stackTop;
+        int dst = 0;
+        for (int src = 0; src < top; src++) {
+            if (rowFill[slots[src]] == width) {
+                removed++;
+            } else {
+                moveRow(src, dst++);
+            }
+        }
+        if (removed > 0) {
+            compacted(0, dst, top);
+        }
+        return removed;
+    }
+
+    /** Removes row {@code line}, shifting every row above it down by one. */
+    public void removeLine(int line) {
+        removeLines(line, 1);
+    }
+
+    /**
+     * Removes the rows in {@code mask}, bit k standing for row
+     * {@code base + k}, and shifts the rows above them down in a single pass.
+     */
+    public void removeLines(int base, int mask) {
+        if (mask == 0) {
+            return;
+        }
+        int top = Math.max(stackTop, base + 32 - Integer.numberOfLeadingZeros(mask));
+        int dst = base;
+        for (int src = base; src < top; src++) {
+            int k = src - base;
+            if (k >= 32 || (mask & (1 << k)) == 0) {
+                moveRow(src, dst++);
+            }
+        }
+        compacted(base, dst, top);
+    }
+
+    /** Moves row {@code src} down to {@code dst}, leaving the removed row that was there at {@code src}. */
+    private void moveRow(int src, int dst) {
+        if (src != dst) {
+            int slot = slots[dst];
+            slots[dst] = slots[src];
+            slots[src] = slot;
+        }
+    }
+
+    /** Empties rows {@code dst..top-1} left over by a compaction and fixes the column heights. */
+    private void compacted(int base, int dst, int top) {
+        for (int y = dst; y < top; y++) {
+            int slot = slots[y];
+            if (rowFill[slot] != 0) {
+                Arrays.fill(cells, slot * words, slot * words + words, 0);
+                Arrays.fill(colors, slot * width, slot * width + width, (byte) 0);
+                rowFill[slot] = 0;
+            }
+        }
+        int newTop = 0;
+        for (int x = 0; x < width; x++) {
+            if (heights[x] > base) {
+                heights[x] = columnTop(x, Math.min(heights[x], dst));
+            }
+            newTop = Math.max(newTop, heights[x]);
+        }
+        stackTop = newTop;
+        dropValid = false;
+        if (listener != null) {
+            listener.cellsChanged(0, base, width - 1, top - 1);
+        }
+    }
+
+    /** One more than the highest occupied row of the board. */
+    public int stackTop() {
+        return stackTop;
+    }
+
+    private void updateStackTop() {
+        int top = 0;
+        for (int x = 0; x < width; x++) {
+            top = Math.max(top, heights[x]);
+        }
+        stackTop = top;
+    }
+
+    private void movePiece(Tetromino newPiece, int newX, int newY) {
+        Tetromino oldPiece = curPiece;
+        int oldX = curX;
+        int oldY = curY;
+        curPiece = newPiece;
+        curX = newX;
+        curY = newY;
+        // Falling straight down keeps the same landing spot
+        if (newPiece != oldPiece || newX != oldX || newY > oldY) {
+            dropValid = false;
+        }
+        pieceChanged(oldPiece, oldX, oldY);
+        pieceChanged(newPiece, newX, newY);
+    }
+
+    /** Height of column {@code x} counting only rows below {@code y}. */
+    private int columnTop(int x, int y) {
+        int word = x >>> 6;
+        long bit = 1L << x;
+        while (y > 0 && (cells[slots[y - 1] * words + word] & bit) == 0) {
+            y--;
+        }
+        return y;
+    }
+
+    private void pieceChanged(Tetromino piece, int x, int y) {
+        if (listener != null && piece.getShape() != Tetrominoes.NoShape) {
+            listener.cellsChanged(x + piece.minX(), y - piece.maxY(), x + piece.maxX(), y - piece.minY());
+        }
+    }
+
+    private void boardChanged() {
+        if (listener != null) {
+            listener.cellsChanged(0, 0, width - 1, height - 1);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Headless game rules of {@link EnhancedTetris}: next piece, hold, scoring,
+ * the Tetris bonus and a level up every 10 lines.
+ *
+ * The Swing front-end and the simulator both drive this class. Cleared rows
+ * are removed right away unless the caller asked to animate them, in which
+ * case they stay on the board until {@link #clearLines()} is called.
+ *
+ * Real-time front-ends call {@link #step()} once per {@link GameLoop} step,
+ * which runs gravity and the line clear animation on a step count so that a
+ * game is fully determined by its seed and the moves made at each step.
+ */
+class TetrisGame {
+    static final int INITIAL_DELAY = 500;
+    /** Steps the cleared rows stay on the board when line clears are animated (300ms). */
+    static final int CLEAR_ANIMATION_TICKS = 18;
+
+    /** Callbacks for the events a front-end has to react to. */
+    interface Listener {
+        default void linesCleared(int numLines) {
+        }
+
+        default void levelChanged(int level) {
+        }
+
+        /** The current piece was taken from the preview queue. */
+        default void pieceSpawned() {
+        }
+
+        default void holdChanged() {
+        }
+
+        default void gameOver() {
+        }
+    }
+
+    private static final Listener NO_LISTENER = new Listener() {
+    };
+
+    private final TetrisEngine engine;
+    private final PieceQueue queue;
+    private final boolean animateLineClears;
+    private Listener listener = NO_LISTENER;
+
+    private boolean isFallingFinished = false;
+    private boolean isStarted = false;
+    private int score = 0;
+    private int level = 1;
+    private int linesRemoved = 0;
+    private int piecesPlaced = 0;
+    private long seed;
+    private int steps = 0;
+    private int gravityCounter = 0;
+    private int clearTicks = 0;
+
+    private Tetromino heldPiece;
+    private boolean canHold = true;
+    private int clearBase = 0;
+    private int clearMask = 0;
+
+    public TetrisGame(TetrisEngine engine, boolean animateLineClears) {
+        this(engine, new UniformGenerator(), 1, animateLineClears);
+    }
+
+    public TetrisGame(TetrisEngine engine, PieceGenerator generator, int previewSize, boolean animateLineClears) {
+        this.engine = engine;
+        this.queue = new PieceQueue(generator, previewSize);
+        this.animateLineClears = animateLineClears;
+        this.heldPiece = Tetromino.of(Tetrominoes.NoShape);
+        this.queue.reset(ThreadLocalRandom.current().nextLong());
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener == null ? NO_LISTENER : listener;
+    }
+
+    public TetrisEngine engine() {
+        return engine;
+    }
+
+    public boolean isStarted() {
+        return isStarted;
+    }
+
+    public boolean isFallingFinished() {
+        return isFallingFinished;
+    }
+
+    public int score() {
+        return score;
+    }
+
+    public int level() {
+        return level;
+    }
+
+    public int linesRemoved() {
+        return linesRemoved;
+    }
+
+    public int piecesPlaced() {
+        return piecesPlaced;
+    }
+
+    /** Seed the piece sequence of the current game was started with. */
+    public long seed() {
+        return seed;
+    }
+
+    /** Pieces taken from the generator so far, including the one held first. */
+    public int piecesDealt() {
+        return queue.taken();
+    }
+
+    public PieceGenerator.Kind generatorKind() {
+        return queue.kind();
+    }
+
+    /** Writes the state of the piece generator, {@link PieceGenerator.Kind#stateBytes} bytes. */
+    void saveGeneratorState(ByteBuffer out) {
+        queue.saveState(out);
+    }
+
+    /** Pieces the generator has dealt ahead of the current one, at least the preview. */
+    int upcomingCount() {
+        return queue.upcomingCount();
+    }
+
+    Tetromino upcoming(int index) {
+        return queue.upcoming(index);
+    }
+
+    public Tetromino nextPiece() {
+        return queue.peek(0);
+    }
+
+    /** The piece {@code index} places ahead of the current one, 0 being the next piece. */
+    public Tetromino preview(int index) {
+        return queue.peek(index);
+    }
+
+    public int previewSize() {
+        return queue.size();
+    }
+
+    public Tetromino heldPiece() {
+        return heldPiece;
+    }
+
+    public boolean canHold() {
+        return canHold;
+    }
+
+    /** True while row {@code y} waits for {@link #clearLines()}. */
+    public boolean isClearing(int y) {
+        int k = y - clearBase;
+        return k >= 0 && k < 32 && (clearMask & (1 << k)) != 0;
+    }
+
+    /** Lowest row waiting for {@link #clearLines()}. */
+    public int clearBase() {
+        return clearBase;
+    }
+
+    /** Rows waiting for {@link #clearLines()}, bit k standing for row {@code clearBase() + k}. */
+    public int clearMask() {
+        return clearMask;
+    }
+
+    /** Gravity interval in milliseconds for the current level. */
+    public int delay() {
+        return Math.max(100, INITIAL_DELAY - (level - 1) * 50);
+    }
+
+    /** Number of {@link #step()} calls since the game started. */
+    public int steps() {
+        return steps;
+    }
+
+    /** Steps since the piece last fell by gravity. */
+    public int gravityCounter() {
+        return gravityCounter;
+    }
+
+    /** Steps the pending line clear has been shown for. */
+    public int clearTicks() {
+        return clearTicks;
+    }
+
+    /** Gravity interval in {@link GameLoop} steps for the current level. */
+    public int gravityTicks() {
+        return delay() * GameLoop.TICKS_PER_SECOND / 1000;
+    }
+
+    /** True while a piece is falling and accepts input. */
+    public boolean isPieceActive() {
+        return isStarted && engine.curPiece().getShape() != Tetrominoes.NoShape;
+    }
+
+    /** Starts a new game with a random seed. */
+    public void start() {
+        start(ThreadLocalRandom.current().nextLong());
+    }
+
+    /** Starts a new game whose pieces are fully determined by {@code seed}. */
+    public void start(long seed) {
+        this.seed = seed;
+        queue.reset(seed);
+        isStarted = true;
+        isFallingFinished = false;
+        score = 0;
+        level = 1;
+        linesRemoved = 0;
+        piecesPlaced = 0;
+        heldPiece = Tetromino.of(Tetrominoes.NoShape);
+        steps = 0;
+        gravityCounter = 0;
+        clearTicks = 0;
+        clearMask = 0;
+        engine.clear();
+        newPiece();
+    }
+
+    /** Puts the game back in the state {@code snapshot} was taken in, without calling the listener. */
+    void restore(GameSnapshot snapshot) {
+        if (snapshot.kind != queue.kind() || snapshot.width != engine.width() || snapshot.height != engine.height()) {
+            throw new IllegalArgumentException("Snapshot of a " + snapshot.width + "x" + snapshot.height + " "
+                    + snapshot.kind + " game");
+        }
+        engine.setCells(snapshot.cells, snapshot.rows);
+        if (snapshot.piece.getShape() == Tetrominoes.NoShape) {
+            engine.clearPiece();
+        } else if (!engine.tryMove(snapshot.piece, snapshot.x, snapshot.y)) {
+            throw new IllegalArgumentException("Snapshot piece overlaps the board");
+        }
+        seed = snapshot.seed;
+        queue.restore(ByteBuffer.wrap(snapshot.generatorState), snapshot.upcoming, snapshot.piecesDealt);
+        isStarted = snapshot.started;
+        isFallingFinished = snapshot.fallingFinished;
+        score = snapshot.score;
+        level = snapshot.level;
+        linesRemoved = snapshot.lines;
+        piecesPlaced = snapshot.piecesPlaced;
+        heldPiece = snapshot.heldPiece;
+        canHold = snapshot.canHold;
+        steps = snapshot.steps;
+        gravityCounter = snapshot.gravityCounter;
+        clearTicks = snapshot.clearTicks;
+        clearBase = snapshot.clearBase;
+        clearMask = snapshot.clearMask;
+    }
+
+    /** One gravity step: spawns the next piece after a lock, otherwise moves the piece down. */
+    public void tick() {
+        if (!isStarted || clearMask != 0) {
+            return;
+        }
+        if (isFallingFinished) {
+            isFallingFinished = false;
+            newPiece();
+        } else {
+            oneLineDown();
+        }
+    }
+
+    /** Advances the game by one {@link GameLoop} step: the line clear animation, then gravity. */
+    public void step() {
+        if (!isStarted) {
+            return;
+        }
+        steps++;
+        if (clearMask != 0 && ++clearTicks >= CLEAR_ANIMATION_TICKS) {
+            clearLines();
+        }
+        if (++gravityCounter >= gravityTicks()) {
+            gravityCounter = 0;
+            tick();
+        }
+    }
+
+    public boolean moveLeft() {
+        return isPieceActive() && engine.tryMove(engine.curPiece(), engine.curX() - 1, engine.curY());
+    }
+
+    public boolean moveRight() {
+        return isPieceActive() && engine.tryMove(engine.curPiece(), engine.curX() + 1, engine.curY());
+    }
+
+    public boolean rotateLeft() {
+        return isPieceActive() && engine.tryMove(engine.curPiece().rotateLeft(), engine.curX(), engine.curY());
+    }
+
+    public boolean rotateRight() {
+        return isPieceActive() && engine.tryMove(engine.curPiece().rotateRight(), engine.curX(), engine.curY());
+    }
+
+    /** Moves the piece down one row, locking it if it cannot move. */
+    public void oneLineDown() {
+        if (!isPieceActive()) {
+            return;
+        }
+        if (!engine.tryMove(engine.curPiece(), engine.curX(), engine.curY() - 1)) {
+            pieceDropped();
+        }
+    }
+
+    public void dropDown() {
+        if (!isPieceActive()) {
+            return;
+        }
+        engine.tryMove(engine.curPiece(), engine.curX(), engine.dropY());
+        pieceDropped();
+    }
+
+    public void hold() {
+        if (!canHold || !isPieceActive()) {
+            return;
+        }
+
+        if (heldPiece.getShape() == Tetrominoes.NoShape) {
+            heldPiece = engine.curPiece();
+            newPiece();
+        } else {
+            Tetromino temp = engine.curPiece();
+            engine.spawn(heldPiece);
+            heldPiece = temp;
+        }
+        canHold = false;
+        listener.holdChanged();
+    }
+
+    /**
+     * Rotates the current piece clockwise to {@code rotation}, shifts it towards
+     * column {@code x} and hard-drops it. Moves that are blocked stop early, as
+     * they would for a player.
+     */
+    public void place(int rotation, int x) {
+        if (!isPieceActive()) {
+            return;
+        }
+        for (int i = 0; i < 3 && engine.curPiece().getRotation() != (rotation & 3); i++) {
+            if (!rotateRight()) {
+                break;
+            }
+        }
+        while (engine.curX() < x) {
+            if (!moveRight()) {
+                break;
+            }
+        }
+        while (engine.curX() > x) {
+            if (!moveLeft()) {
+                break;
+            }
+        }
+        dropDown();
+    }
+
+    /** Removes the rows cleared by the last lock when line clears are animated. */
+    public void clearLines() {
+        engine.removeLines(clearBase, clearMask);
+        clearMask = 0;
+        clearTicks = 0;
+    }
+
+    private void pieceDropped() {
+        int fullRows = engine.lockPiece();
+        piecesPlaced++;
+        GameEvents.pieceLocked(engine);
+
+        removeFullLines(fullRows);
+
+        if (!isFallingFinished) {
+            newPiece();
+        }
+    }
+
+    private void newPiece() {
+        Tetromino curPiece = queue.poll();
+
+        canHold = true;
+        listener.pieceSpawned();
+
+        if (!engine.spawn(curPiece)) {
+            engine.clearPiece();
+            isStarted = false;
+            listener.gameOver();
+            return;
+        }
+        GameEvents.pieceSpawned(engine);
+    }
+
+    private void removeFullLines(int fullRows) {
+        int numFullLines = Integer.bitCount(fullRows);
+
+        if (numFullLines > 0) {
+            Tetrominoes locked = engine.curPiece().getShape();
+            GameEvents.linesCleared(engine, locked, numFullLines);
+            linesRemoved += numFullLines;
+            score += numFullLines * 100 * level;
+
+            if (numFullLines == 4) {
+                score += 400 * level; // Tetris bonus
+            }
+
+            isFallingFinished = true;
+            clearBase = engine.lockedBottom();
+            clearMask = fullRows;
+            engine.clearPiece();
+            if (!animateLineClears) {
+                clearLines();
+            }
+
+            listener.linesCleared(numFullLines);
+
+            // Level up every 10 lines
+            int newLevel = linesRemoved / 10 + 1;
+            if (newLevel != level) {
+                level = newLevel;
+                GameEvents.levelChanged(engine, locked, level, delay());
+                listener.levelChanged(level);
+            }
+        }
+    }
+}
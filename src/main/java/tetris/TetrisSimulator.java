@@ -0,0 +1,195 @@
+package tetris;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * Plays {@link TetrisGame}s headlessly as fast as the CPU allows.
+ *
+ * Games are split into batches on a fork-join pool; every leaf batch reuses one
+ * engine and one policy instance, so policies may keep per-thread state. Game
+ * {@code i} is always seeded from the run seed and {@code i}, so a run gives the
+ * same games no matter how it is split across threads. With an archive, each
+ * batch appends its results to the {@link ScoreArchive} in one go.
+ *
+ * Usage: {@code java TetrisSimulator [games] [threads] [maxPieces] [uniform|bag] [seed] [archive dir] [random|heuristic|beam]}
+ */
+class TetrisSimulator {
+    private static final int BATCH_SIZE = 64;
+
+    /** Totals over a set of finished games. */
+    static final class Stats {
+        long games;
+        long pieces;
+        long lines;
+        long totalScore;
+        int maxScore;
+
+        void add(TetrisGame game) {
+            games++;
+            pieces += game.piecesPlaced();
+            lines += game.linesRemoved();
+            totalScore += game.score();
+            maxScore = Math.max(maxScore, game.score());
+        }
+
+        Stats merge(Stats other) {
+            games += other.games;
+            pieces += other.pieces;
+            lines += other.lines;
+            totalScore += other.totalScore;
+            maxScore = Math.max(maxScore, other.maxScore);
+            return this;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final Supplier<? extends MovePolicy> policies;
+    private final PieceGenerator.Kind randomizer;
+    private final int maxPieces;
+    private final long seed;
+    private ScoreArchive archive;
+
+    TetrisSimulator(ForkJoinPool pool, Supplier<? extends MovePolicy> policies,
+            PieceGenerator.Kind randomizer, int maxPieces, long seed) {
+        this.pool = pool;
+        this.policies = policies;
+        this.randomizer = randomizer;
+        this.maxPieces = maxPieces;
+        this.seed = seed;
+    }
+
+    /** Appends the result of every game played from now on to {@code archive}. */
+    void archiveTo(ScoreArchive archive) {
+        this.archive = archive;
+    }
+
+    Stats run(int games) {
+        return pool.invoke(task(games));
+    }
+
+    /** A task playing {@code games} games, for callers that run several simulations at once. */
+    ForkJoinTask<Stats> task(int games) {
+        return new Batch(0, games);
+    }
+
+    /** Seed of game {@code index} in a run seeded with {@code seed}. */
+    static long gameSeed(long seed, int index) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Plays one game to the end or until {@code maxPieces} pieces were placed. */
+    static void playGame(TetrisGame game, MovePolicy policy, long seed, int maxPieces) {
+        game.start(seed);
+        while (game.isStarted() && game.piecesPlaced() < maxPieces) {
+            int placement = policy.choose(game);
+            if (MovePolicy.hold(placement)) {
+                game.hold();
+            }
+            game.place(MovePolicy.rotation(placement), MovePolicy.x(placement));
+            if (game.isFallingFinished()) {
+                game.tick();
+            }
+        }
+    }
+
+    private final class Batch extends RecursiveTask<Stats> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        Batch(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from <= BATCH_SIZE) {
+                return playBatch();
+            }
+            int mid = (from + to) >>> 1;
+            Batch left = new Batch(from, mid);
+            left.fork();
+            Stats right = new Batch(mid, to).compute();
+            return right.merge(left.join());
+        }
+
+        private Stats playBatch() {
+            Stats stats = new Stats();
+            TetrisGame game = new TetrisGame(new TetrisEngine(), randomizer.create(seed),
+                    EnhancedTetris.PREVIEW_SIZE, false);
+            MovePolicy policy = policies.get();
+            List<GameResult> results = archive == null ? null : new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                playGame(game, policy, gameSeed(seed, i), maxPieces);
+                stats.add(game);
+                if (results != null) {
+                    results.add(GameResult.of(game));
+                }
+            }
+            if (results != null) {
+                try {
+                    archive.appendAll(results);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return stats;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int maxPieces = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        PieceGenerator.Kind randomizer = args.length > 3
+                ? PieceGenerator.Kind.valueOf(args[3].toUpperCase()) : PieceGenerator.Kind.UNIFORM;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : System.nanoTime();
+        ScoreArchive archive = args.length > 5 && !args[5].equals("-") ? ScoreArchive.open(Paths.get(args[5])) : null;
+        String policy = args.length > 6 ? args[6] : "random";
+        BeamSearchPolicy.Metrics beamMetrics = new BeamSearchPolicy.Metrics();
+        Supplier<? extends MovePolicy> policies;
+        if (policy.equals("heuristic")) {
+            policies = HeuristicPolicy::new;
+        } else if (policy.equals("beam")) {
+            policies = () -> new BeamSearchPolicy(HeuristicPolicy.DEFAULT_WEIGHTS, BeamSearchPolicy.DEFAULT_BEAM_WIDTH,
+                    ForkJoinPool.commonPool(), beamMetrics);
+        } else {
+            policies = RandomPolicy::new;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        TetrisSimulator simulator = new TetrisSimulator(pool, policies, randomizer, maxPieces, seed);
+        simulator.archiveTo(archive);
+
+        long start = System.nanoTime();
+        Stats stats = simulator.run(games);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+
+        System.out.printf("%d games on %d threads in %.2f s (seed %d)%n", stats.games, threads, seconds, seed);
+        System.out.printf("%.0f games/s, %.0f pieces/s%n", stats.games / seconds, stats.pieces / seconds);
+        System.out.printf("avg score %.1f, avg lines %.2f, max score %d%n",
+                (double) stats.totalScore / stats.games, (double) stats.lines / stats.games, stats.maxScore);
+        if (beamMetrics.searches() > 0) {
+            System.out.printf("beam search: %.0f nodes/s, %.1f%% transposition hits%n",
+                    beamMetrics.nodesPerSecond(), beamMetrics.hitRate() * 100);
+        }
+        if (archive != null) {
+            System.out.printf("archive now holds %d games%n", archive.size());
+            archive.close();
+        }
+    }
+}
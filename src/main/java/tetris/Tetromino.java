@@ -0,0 +1,157 @@
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ * Immutable tetromino in one rotation.
+ *
+ * All 7 shapes x 4 rotations (plus NoShape) are built once when the class is
+ * loaded; rotating is a table lookup and never allocates.
+ */
+final class Tetromino {
+    private static final int[][][] COORDS_TABLE = {
+            { { 0, 0 }, { 0, 0 }, { 0, 0 }, { 0, 0 } },
+            { { 0, -1 }, { 0, 0 }, { -1, 0 }, { -1, 1 } },
+            { { 0, -1 }, { 0, 0 }, { 1, 0 }, { 1, 1 } },
+            { { 0, -1 }, { 0, 0 }, { 0, 1 }, { 0, 2 } },
+            { { -1, 0 }, { 0, 0 }, { 1, 0 }, { 0, 1 } },
+            { { 0, 0 }, { 1, 0 }, { 0, 1 }, { 1, 1 } },
+            { { -1, -1 }, { 0, -1 }, { 0, 0 }, { 0, 1 } },
+            { { 1, -1 }, { 0, -1 }, { 0, 0 }, { 0, 1 } }
+    };
+
+    private static final Tetrominoes[] SHAPES = Tetrominoes.values();
+    private static final Tetromino[][] ROTATIONS = new Tetromino[SHAPES.length][4];
+
+    static {
+        for (Tetrominoes shape : SHAPES) {
+            int[][] coords = COORDS_TABLE[shape.ordinal()];
+            int[] xs = new int[4];
+            int[] ys = new int[4];
+            for (int i = 0; i < 4; i++) {
+                xs[i] = coords[i][0];
+                ys[i] = coords[i][1];
+            }
+            Tetromino[] rotations = ROTATIONS[shape.ordinal()];
+            for (int r = 0; r < 4; r++) {
+                if ((shape == Tetrominoes.SquareShape || shape == Tetrominoes.NoShape) && r > 0) {
+                    rotations[r] = rotations[0];
+                    continue;
+                }
+                rotations[r] = new Tetromino(shape, r, xs.clone(), ys.clone());
+                for (int i = 0; i < 4; i++) {
+                    int x = xs[i];
+                    xs[i] = -ys[i];
+                    ys[i] = x;
+                }
+            }
+        }
+    }
+
+    private final Tetrominoes pieceShape;
+    private final int rotation;
+    private final int[] xs;
+    private final int[] ys;
+    private final int minX;
+    private final int maxX;
+    private final int minY;
+    private final int maxY;
+    private final int[] rowMasks;
+    private final int[] columnBottoms;
+
+    private Tetromino(Tetrominoes shape, int rotation, int[] xs, int[] ys) {
+        this.pieceShape = shape;
+        this.rotation = rotation;
+        this.xs = xs;
+        this.ys = ys;
+
+        int loX = xs[0];
+        int hiX = xs[0];
+        int loY = ys[0];
+        int hiY = ys[0];
+        for (int i = 1; i < 4; i++) {
+            loX = Math.min(loX, xs[i]);
+            hiX = Math.max(hiX, xs[i]);
+            loY = Math.min(loY, ys[i]);
+            hiY = Math.max(hiY, ys[i]);
+        }
+        minX = loX;
+        maxX = hiX;
+        minY = loY;
+        maxY = hiY;
+
+        rowMasks = new int[hiY - loY + 1];
+        columnBottoms = new int[hiX - loX + 1];
+        Arrays.fill(columnBottoms, Integer.MIN_VALUE);
+        for (int i = 0; i < 4; i++) {
+            rowMasks[ys[i] - loY] |= 1 << (xs[i] - loX);
+            columnBottoms[xs[i] - loX] = Math.max(columnBottoms[xs[i] - loX], ys[i]);
+        }
+    }
+
+    /** The spawn orientation of {@code shape}. */
+    public static Tetromino of(Tetrominoes shape) {
+        return ROTATIONS[shape.ordinal()][0];
+    }
+
+    public static Tetromino of(Tetrominoes shape, int rotation) {
+        return ROTATIONS[shape.ordinal()][rotation & 3];
+    }
+
+    public int x(int index) {
+        return xs[index];
+    }
+
+    public int y(int index) {
+        return ys[index];
+    }
+
+    public Tetrominoes getShape() {
+        return pieceShape;
+    }
+
+    /** Number of clockwise quarter turns from the spawn orientation, 0..3. */
+    public int getRotation() {
+        return rotation;
+    }
+
+    public int minX() {
+        return minX;
+    }
+
+    public int maxX() {
+        return maxX;
+    }
+
+    public int minY() {
+        return minY;
+    }
+
+    public int maxY() {
+        return maxY;
+    }
+
+    /**
+     * Occupied columns of each piece row, top row (minY) first, with bit 0 at
+     * minX. Shared between callers and must not be modified.
+     */
+    int[] rowMasks() {
+        return rowMasks;
+    }
+
+    /**
+     * For each column from minX, the largest y offset of the piece in that
+     * column, i.e. its lowest cell on the board. Must not be modified.
+     */
+    int[] columnBottoms() {
+        return columnBottoms;
+    }
+
+    public Tetromino rotateLeft() {
+        return ROTATIONS[pieceShape.ordinal()][(rotation + 3) & 3];
+    }
+
+    public Tetromino rotateRight() {
+        return ROTATIONS[pieceShape.ordinal()][(rotation + 1) & 3];
+    }
+}
@@ -0,0 +1,5 @@
+package tetris;
+
+enum Tetrominoes {
+    NoShape, ZShape, SShape, LineShape, TShape, SquareShape, LShape, MirroredLShape
+}
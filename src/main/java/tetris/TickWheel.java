@@ -0,0 +1,171 @@
+package tetris;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Steps every hosted {@link GameSession} {@link GameLoop#TICKS_PER_SECOND}
+ * times a second on a few shared threads.
+ *
+ * Each thread owns a wheel of {@link #SLOTS} slots spread over one step. A
+ * session sits in one slot and is stepped when the wheel passes it, so the
+ * sessions of a thread wake in small groups across the step instead of all
+ * at once. A session's tick latency is how long after its slot's deadline
+ * its step finished; a thread that falls a whole step behind skips ahead and
+ * counts an overrun rather than running steps back to back.
+ *
+ * New sessions are handed over through a queue and closed ones are dropped
+ * by the wheel thread itself, so the slots are never shared between threads.
+ *
+ * Known gap: the target of a p99 tick latency under 2 ms at 10k sessions has
+ * not been met or measured on a multi-core host. On the single vCPU it was
+ * measured on, the p99 is 4.7 ms at 1k and at 10k sessions alike, and a bare
+ * thread parking to 1 ms deadlines is already woken 2.4 ms late at p99.
+ */
+final class TickWheel {
+    static final int SLOTS = 16;
+
+    private final Wheel[] wheels;
+    private final AtomicInteger nextWheel = new AtomicInteger();
+
+    TickWheel(int threads) {
+        wheels = new Wheel[threads];
+        for (int i = 0; i < threads; i++) {
+            wheels[i] = new Wheel("tick-" + i);
+        }
+    }
+
+    void start() {
+        for (Wheel wheel : wheels) {
+            wheel.thread.start();
+        }
+    }
+
+    void stop() {
+        for (Wheel wheel : wheels) {
+            wheel.running = false;
+            LockSupport.unpark(wheel.thread);
+        }
+    }
+
+    /** Starts stepping {@code session} from the next time its slot comes round. */
+    void add(GameSession session) {
+        wheels[Math.floorMod(nextWheel.getAndIncrement(), wheels.length)].pending.add(session);
+    }
+
+    int threads() {
+        return wheels.length;
+    }
+
+    /** Sessions stepped so far. */
+    long steps() {
+        long total = 0;
+        for (Wheel wheel : wheels) {
+            total += wheel.steps.sum();
+        }
+        return total;
+    }
+
+    long overruns() {
+        long total = 0;
+        for (Wheel wheel : wheels) {
+            total += wheel.overruns.sum();
+        }
+        return total;
+    }
+
+    /** Adds the tick latency counts of every thread to {@code into}; see {@link LatencyHistogram#newCounts()}. */
+    void latency(long[] into) {
+        for (Wheel wheel : wheels) {
+            wheel.latency.addTo(into);
+        }
+    }
+
+    void resetLatency() {
+        for (Wheel wheel : wheels) {
+            wheel.latency.reset();
+        }
+    }
+
+    private static final class Wheel implements Runnable {
+        final Thread thread;
+        final ConcurrentLinkedQueue<GameSession> pending = new ConcurrentLinkedQueue<>();
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder steps = new LongAdder();
+        final LongAdder overruns = new LongAdder();
+        volatile boolean running = true;
+
+        private final GameSession[][] slots = new GameSession[SLOTS][16];
+        private final int[] sizes = new int[SLOTS];
+
+        Wheel(String name) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            long tick = 0;
+            int slot = 0;
+            while (running) {
+                long deadline = start + tick * GameLoop.TICK_NANOS + slot * GameLoop.TICK_NANOS / SLOTS;
+                long remaining;
+                while (running && (remaining = deadline - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(remaining);
+                }
+                takePending();
+                steps.add(stepSlot(slot, deadline));
+
+                if (++slot == SLOTS) {
+                    slot = 0;
+                    tick++;
+                    long behind = System.nanoTime() - (start + tick * GameLoop.TICK_NANOS);
+                    if (behind > GameLoop.TICK_NANOS) {
+                        overruns.increment();
+                        tick += behind / GameLoop.TICK_NANOS;
+                    }
+                }
+            }
+        }
+
+        /** Steps the open sessions of {@code slot} and drops the closed ones; returns how many stepped. */
+        private int stepSlot(int slot, long deadline) {
+            GameSession[] sessions = slots[slot];
+            int size = sizes[slot];
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                GameSession session = sessions[i];
+                if (session.isClosed()) {
+                    continue;
+                }
+                session.tick();
+                latency.record(System.nanoTime() - deadline);
+                sessions[kept++] = session;
+            }
+            Arrays.fill(sessions, kept, size, null);
+            sizes[slot] = kept;
+            return kept;
+        }
+
+        /** Puts each new session into the emptiest slot. */
+        private void takePending() {
+            GameSession session;
+            while ((session = pending.poll()) != null) {
+                int slot = 0;
+                for (int i = 1; i < SLOTS; i++) {
+                    if (sizes[i] < sizes[slot]) {
+                        slot = i;
+                    }
+                }
+                if (sizes[slot] == slots[slot].length) {
+                    slots[slot] = Arrays.copyOf(slots[slot], sizes[slot] * 2);
+                }
+                slots[slot][sizes[slot]++] = session;
+            }
+        }
+    }
+}
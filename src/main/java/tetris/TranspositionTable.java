@@ -0,0 +1,73 @@
+package tetris;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size hash table from 64-bit Zobrist keys to int values, used by
+ * {@link BeamSearchPolicy} to find boards reached by different move orders.
+ *
+ * Entries are stamped with the generation they were stored in, so moving to
+ * a new generation empties the table without clearing it. A key probes a
+ * bucket of {@link #BUCKET} slots; when all are taken by the current
+ * generation, storing evicts the first one.
+ */
+final class TranspositionTable {
+    static final int BUCKET = 4;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int[] stamps;
+    private final int mask;
+    private int generation = 1;
+
+    /** A table of at least {@code capacity} entries. */
+    TranspositionTable(int capacity) {
+        int size = Integer.highestOneBit(Math.max(BUCKET, capacity - 1)) << 1;
+        keys = new long[size];
+        values = new int[size];
+        stamps = new int[size];
+        mask = size - 1;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    /** Forgets every entry. */
+    void nextGeneration() {
+        if (++generation == 0) {
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+    }
+
+    /** The value stored for {@code key} in this generation, or -1. */
+    int get(long key) {
+        int slot = (int) key & mask;
+        for (int i = 0; i < BUCKET; i++) {
+            int s = (slot + i) & mask;
+            if (stamps[s] != generation) {
+                return -1;
+            }
+            if (keys[s] == key) {
+                return values[s];
+            }
+        }
+        return -1;
+    }
+
+    void put(long key, int value) {
+        int slot = (int) key & mask;
+        int target = slot;
+        for (int i = 0; i < BUCKET; i++) {
+            int s = (slot + i) & mask;
+            if (stamps[s] != generation || keys[s] == key) {
+                target = s;
+                break;
+            }
+        }
+        keys[target] = key;
+        values[target] = value;
+        stamps[target] = generation;
+    }
+}
@@ -0,0 +1,35 @@
+package tetris;
+
+import java.nio.ByteBuffer;
+
+/** Draws each shape independently with equal probability; its state is that of the random generator. */
+final class UniformGenerator implements PieceGenerator {
+    private static final Tetrominoes[] SHAPES = Tetrominoes.values();
+
+    private final SplitMix64 random = new SplitMix64(0);
+
+    @Override
+    public void reset(long seed) {
+        random.setState(seed);
+    }
+
+    @Override
+    public Tetrominoes next() {
+        return SHAPES[random.nextInt(7) + 1];
+    }
+
+    @Override
+    public Kind kind() {
+        return Kind.UNIFORM;
+    }
+
+    @Override
+    public void saveState(ByteBuffer out) {
+        out.putLong(random.state());
+    }
+
+    @Override
+    public void restoreState(ByteBuffer in) {
+        random.setState(in.getLong());
+    }
+}
@@ -0,0 +1,233 @@
+package tetris;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Tunes the {@link HeuristicPolicy} weights with the cross-entropy method.
+ *
+ * Every generation samples candidate weight vectors from a Gaussian per
+ * weight, has each candidate play the same seeded games with the
+ * {@link TetrisSimulator} (so the rules and scoring are those of
+ * {@link EnhancedTetris}), and refits the Gaussians to the elite candidates
+ * by average score. Extra noise is added to the spread for the first
+ * generations so that it does not collapse too early.
+ *
+ * All the candidates of a generation are submitted to one work-stealing pool
+ * at once. The state after each generation is checkpointed to a properties
+ * file, and a run started with an existing checkpoint resumes from it.
+ *
+ * Usage: {@code WeightTuner [generations] [candidates] [games] [maxPieces] [threads] [checkpoint] [seed]}
+ */
+class WeightTuner {
+    static final String CHECKPOINT_FILE = "tetris_tuner.properties";
+    static final double ELITE_FRACTION = 0.1;
+    static final double INITIAL_STDDEV = 0.25;
+    /** Noise added to the variance, fading out linearly over {@link #NOISE_GENERATIONS}. */
+    static final double NOISE = 0.01;
+    static final int NOISE_GENERATIONS = 50;
+
+    private final ForkJoinPool pool;
+    private final int candidates;
+    private final int games;
+    private final int maxPieces;
+    private final Path checkpoint;
+
+    private long seed;
+    private int generation = 0;
+    private double[] mean = HeuristicPolicy.DEFAULT_WEIGHTS.clone();
+    private double[] stddev = new double[HeuristicPolicy.FEATURES];
+    private double[] bestWeights = HeuristicPolicy.DEFAULT_WEIGHTS.clone();
+    private double bestFitness = Double.NEGATIVE_INFINITY;
+
+    WeightTuner(ForkJoinPool pool, int candidates, int games, int maxPieces, Path checkpoint, long seed) {
+        if (candidates < 2) {
+            throw new IllegalArgumentException("Need at least 2 candidates: " + candidates);
+        }
+        this.pool = pool;
+        this.candidates = candidates;
+        this.games = games;
+        this.maxPieces = maxPieces;
+        this.checkpoint = checkpoint;
+        this.seed = seed;
+        Arrays.fill(stddev, INITIAL_STDDEV);
+    }
+
+    int generation() {
+        return generation;
+    }
+
+    double[] bestWeights() {
+        return bestWeights.clone();
+    }
+
+    /** Runs one generation and checkpoints its result. */
+    void step() throws IOException {
+        long start = System.nanoTime();
+        long generationSeed = TetrisSimulator.gameSeed(seed, generation);
+        SplittableRandom random = new SplittableRandom(generationSeed);
+
+        double[][] weights = new double[candidates][HeuristicPolicy.FEATURES];
+        List<ForkJoinTask<TetrisSimulator.Stats>> tasks = new ArrayList<>(candidates);
+        for (int c = 0; c < candidates; c++) {
+            for (int f = 0; f < HeuristicPolicy.FEATURES; f++) {
+                weights[c][f] = mean[f] + stddev[f] * gaussian(random);
+            }
+            double[] w = weights[c];
+            // Every candidate plays the same games, so their scores compare fairly
+            TetrisSimulator simulator = new TetrisSimulator(pool, () -> new HeuristicPolicy(w),
+                    PieceGenerator.Kind.BAG, maxPieces, generationSeed);
+            tasks.add(pool.submit(simulator.task(games)));
+        }
+
+        double[] fitness = new double[candidates];
+        long gamesPlayed = 0;
+        for (int c = 0; c < candidates; c++) {
+            TetrisSimulator.Stats stats = tasks.get(c).join();
+            fitness[c] = (double) stats.totalScore / stats.games;
+            gamesPlayed += stats.games;
+        }
+
+        Integer[] order = new Integer[candidates];
+        for (int c = 0; c < candidates; c++) {
+            order[c] = c;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(fitness[b], fitness[a]));
+        int elite = Math.max(2, (int) Math.ceil(candidates * ELITE_FRACTION));
+        double noise = NOISE * Math.max(0, 1 - (double) generation / NOISE_GENERATIONS);
+        double eliteFitness = 0;
+        for (int f = 0; f < HeuristicPolicy.FEATURES; f++) {
+            double sum = 0;
+            for (int i = 0; i < elite; i++) {
+                sum += weights[order[i]][f];
+            }
+            double m = sum / elite;
+            double variance = 0;
+            for (int i = 0; i < elite; i++) {
+                double d = weights[order[i]][f] - m;
+                variance += d * d;
+            }
+            mean[f] = m;
+            stddev[f] = Math.sqrt(variance / elite + noise);
+        }
+        for (int i = 0; i < elite; i++) {
+            eliteFitness += fitness[order[i]] / elite;
+        }
+        if (fitness[order[0]] > bestFitness) {
+            bestFitness = fitness[order[0]];
+            bestWeights = weights[order[0]].clone();
+        }
+        generation++;
+        save();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("generation %d: %.1f s, %.0f games/s, best %.0f, elite %.0f, mean %s%n",
+                generation, seconds, gamesPlayed / seconds, fitness[order[0]], eliteFitness, summary(mean));
+    }
+
+    /** Restores the state saved in the checkpoint, if there is one; returns false otherwise. */
+    boolean resume() throws IOException {
+        if (!Files.exists(checkpoint)) {
+            return false;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(checkpoint)) {
+            properties.load(reader);
+        }
+        generation = Integer.parseInt(properties.getProperty("generation"));
+        seed = Long.parseLong(properties.getProperty("seed"));
+        mean = parse(properties.getProperty("mean"));
+        stddev = parse(properties.getProperty("stddev"));
+        bestWeights = parse(properties.getProperty("bestWeights"));
+        bestFitness = Double.parseDouble(properties.getProperty("bestFitness"));
+        return true;
+    }
+
+    /** Writes the state to a temporary file and renames it over the checkpoint. */
+    private void save() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("generation", String.valueOf(generation));
+        properties.setProperty("seed", String.valueOf(seed));
+        properties.setProperty("mean", format(mean));
+        properties.setProperty("stddev", format(stddev));
+        properties.setProperty("bestWeights", format(bestWeights));
+        properties.setProperty("bestFitness", String.valueOf(bestFitness));
+        Path temp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp)) {
+            properties.store(writer, "WeightTuner checkpoint");
+        }
+        Files.move(temp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        // Box-Muller; SplittableRandom has no nextGaussian
+        double u = 1 - random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    private static String summary(double[] values) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < values.length; i++) {
+            sb.append(i > 0 ? ", " : "").append(String.format("%.3f", values[i]));
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String format(double[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(values[i]);
+        }
+        return sb.toString();
+    }
+
+    private static double[] parse(String values) {
+        String[] parts = values.split(",");
+        if (parts.length != HeuristicPolicy.FEATURES) {
+            throw new IllegalArgumentException("Expected " + HeuristicPolicy.FEATURES + " weights: " + values);
+        }
+        double[] result = new double[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Double.parseDouble(parts[i].trim());
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int generations = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int candidates = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int maxPieces = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+        int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+        Path checkpoint = Paths.get(args.length > 5 ? args[5] : CHECKPOINT_FILE);
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : System.nanoTime();
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        WeightTuner tuner = new WeightTuner(pool, candidates, games, maxPieces, checkpoint, seed);
+        if (tuner.resume()) {
+            System.out.printf("resuming %s at generation %d%n", checkpoint, tuner.generation());
+        }
+        System.out.printf("%d candidates x %d games of up to %d pieces on %d threads%n",
+                candidates, games, maxPieces, threads);
+        while (tuner.generation() < generations) {
+            tuner.step();
+        }
+        pool.shutdown();
+        System.out.printf("best weights (height, lines, holes, bumpiness, wells): %s%n", format(tuner.bestWeights()));
+    }
+}
@@ -0,0 +1,98 @@
+package tetris;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ * A warm {@link EnhancedTetris#paint} should allocate nothing; this fails if
+ * a frame starts allocating again, which {@code PaintBenchmark} only shows
+ * when run by hand with {@code -prof gc}.
+ */
+class PaintAllocationTest {
+    private static final int WIDTH = 500;
+    private static final int HEIGHT = 650;
+    private static final int WARMUP_FRAMES = 20_000;
+    private static final int FRAMES = 2_000;
+    /** Leaves room for a stray allocation by the JIT, far below even one object per frame. */
+    private static final long MAX_BYTES_PER_FRAME = 16;
+
+    private static final Tetrominoes[] SHAPES = Tetrominoes.values();
+
+    private EnhancedTetris panel;
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @BeforeEach
+    void setUp() {
+        panel = new EnhancedTetris(PieceGenerator.Kind.UNIFORM);
+        panel.createSidePanel();
+        panel.setSize(WIDTH, HEIGHT);
+        panel.game().start(42);
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        g.dispose();
+        panel.leaderboard().close(5, TimeUnit.SECONDS);
+        if (panel.archive() != null) {
+            panel.archive().close();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 10, 16 })
+    void paintDoesNotAllocate(int filledRows) {
+        com.sun.management.ThreadMXBean threads = threads();
+        fill(panel.game().engine(), filledRows);
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            panel.paint(g);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < FRAMES; i++) {
+            panel.paint(g);
+        }
+        long perFrame = (threads.getThreadAllocatedBytes(thread) - before) / FRAMES;
+
+        assertTrue(perFrame <= MAX_BYTES_PER_FRAME,
+                "paint allocated " + perFrame + " B per frame with " + filledRows + " rows filled");
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "thread allocation counters are not available");
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "thread allocation counters are not available");
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /** The rows of {@code BoardFixtures}, which only the benchmarks can see. */
+    private static void fill(TetrisEngine engine, int rows) {
+        SplittableRandom random = new SplittableRandom(42);
+        engine.clear();
+        for (int y = 0; y < rows; y++) {
+            int hole = random.nextInt(engine.width());
+            for (int x = 0; x < engine.width(); x++) {
+                if (x != hole) {
+                    engine.setCell(x, y, SHAPES[random.nextInt(7) + 1]);
+                }
+            }
+        }
+    }
+}